@@ -0,0 +1,171 @@
+package io.github.markwinton.pathfaces;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+/**
+ * <p>Rewrites large numbers of URLs in parallel, for jobs such as sitemap generation or cache warming.</p>
+ * <p>Input is read in fixed size chunks; each chunk is split across the executor, and its results are passed to
+ * the consumer on the calling thread in input order before the next chunk is read. Only one chunk is held in
+ * memory at a time, and the consumer does not need to be thread-safe.</p>
+ * <p>Use one of the static <code>of</code> methods to create an instance.</p>
+ */
+public final class BatchRewriter {
+
+    static final int CHUNK_SIZE = 8192;
+
+    private final RewriteConfig rewriteConfig;
+    // A lock rather than synchronized, so a virtual thread building the route matcher is not pinned
+    private final ReentrantLock routeMatcherLock = new ReentrantLock();
+    private final ViewIndex viewIndex;
+    private volatile RouteMatcher routeMatcher;
+    private final Executor executor;
+    private final int parallelism;
+
+    private BatchRewriter(final RewriteConfig rewriteConfig, final Executor executor, final int parallelism) {
+        this.rewriteConfig = rewriteConfig;
+        this.viewIndex = ViewIndex.of(rewriteConfig);
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Create a rewriter using the common fork/join pool.
+     * @param rewriteConfig The configuration to rewrite with, usually {@link RewrittenURLs#getRewriteConfig()}.
+     * @return Never null.
+     */
+    public static BatchRewriter of(final RewriteConfig rewriteConfig) {
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+        return new BatchRewriter(rewriteConfig, pool, pool.getParallelism());
+    }
+
+    /**
+     * Create a rewriter which runs its work on the given executor.
+     * @param rewriteConfig The configuration to rewrite with, usually {@link RewrittenURLs#getRewriteConfig()}.
+     * @param executor The executor to use; cannot be null.
+     * @param parallelism The number of tasks each chunk of input is split into.
+     * @return Never null.
+     */
+    public static BatchRewriter of(final RewriteConfig rewriteConfig, final Executor executor, final int parallelism) {
+        return new BatchRewriter(rewriteConfig, executor, parallelism);
+    }
+
+    /**
+     * <p>Rewrite each view to its pretty URL, as the {@link RewriteViewHandler} would for a bookmarkable link.</p>
+     * <p>The result passed to the consumer holds the pretty URL (without context path) and any parameters not
+     * consumed by it. Views that are ignored or have no rule are passed through with their view-id and
+     * parameters unchanged.</p>
+     */
+    public void rewriteViews(
+            final Iterator<BookmarkableView> views, final BiConsumer<BookmarkableView, RewriteResult> results
+    ) {
+        process(views, results, (view, buffer) -> {
+            final RewriteResult result = viewIndex.rewrite(view.viewId(), view.parameters(), buffer);
+            return result != null ? result : new RewriteResult(view.viewId(), view.parameters());
+        });
+    }
+
+    /**
+     * Rewrite each view to its pretty URL, as {@link #rewriteViews(Iterator, BiConsumer)}; the stream is consumed
+     * on the calling thread.
+     */
+    public void rewriteViews(
+            final Stream<BookmarkableView> views, final BiConsumer<BookmarkableView, RewriteResult> results
+    ) {
+        rewriteViews(views.iterator(), results);
+    }
+
+    /**
+     * <p>Rewrite each inbound path (without context path, optionally with a query string) to the URL the
+     * {@link RewriteURLFilter} would dispatch it to; the consumer receives null for paths the filter would
+     * pass through unchanged.</p>
+     * <p>The rules are compiled into a route matcher on the first call, so rewriters only used for views do not
+     * pay for it.</p>
+     */
+    public void rewritePaths(final Iterator<String> paths, final BiConsumer<String, String> results) {
+        final RouteMatcher matcher = getRouteMatcher();
+        process(paths, results,
+                (path, buffer) -> matcher.getRewrittenUrl(RewriteURLFilter.getRequestDetails(path)));
+    }
+
+    /**
+     * Rewrite each inbound path to the URL the {@link RewriteURLFilter} would dispatch it to, as
+     * {@link #rewritePaths(Iterator, BiConsumer)}; the stream is consumed on the calling thread.
+     */
+    public void rewritePaths(final Stream<String> paths, final BiConsumer<String, String> results) {
+        rewritePaths(paths.iterator(), results);
+    }
+
+    private RouteMatcher getRouteMatcher() {
+        final RouteMatcher built = routeMatcher;
+        if (built != null) {
+            return built;
+        }
+        routeMatcherLock.lock();
+        try {
+            if (routeMatcher == null) {
+                routeMatcher = CompiledRouteMatcher.of(rewriteConfig);
+            }
+            return routeMatcher;
+        }
+        finally {
+            routeMatcherLock.unlock();
+        }
+    }
+
+    private <T, R> void process(
+            final Iterator<? extends T> input, final BiConsumer<? super T, ? super R> results,
+            final BiFunction<T, StringBuilder, R> rewriter
+    ) {
+        final List<T> chunk = new ArrayList<>(CHUNK_SIZE);
+        while (input.hasNext()) {
+            chunk.clear();
+            while (input.hasNext() && chunk.size() < CHUNK_SIZE) {
+                chunk.add(input.next());
+            }
+            final List<R> rewritten = rewriteChunk(chunk, rewriter);
+            for (int i = 0; i < chunk.size(); i++) {
+                results.accept(chunk.get(i), rewritten.get(i));
+            }
+        }
+    }
+
+    private <T, R> List<R> rewriteChunk(final List<T> chunk, final BiFunction<T, StringBuilder, R> rewriter) {
+        final int sliceSize = Math.max(1, (chunk.size() + parallelism - 1) / parallelism);
+        final List<CompletableFuture<List<R>>> slices = new ArrayList<>();
+        for (int from = 0; from < chunk.size(); from += sliceSize) {
+            final List<T> slice = chunk.subList(from, Math.min(from + sliceSize, chunk.size()));
+            slices.add(CompletableFuture.supplyAsync(() -> rewriteSlice(slice, rewriter), executor));
+        }
+        final List<R> rewritten = new ArrayList<>(chunk.size());
+        try {
+            slices.forEach(slice -> rewritten.addAll(slice.join()));
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return rewritten;
+    }
+
+    private static <T, R> List<R> rewriteSlice(final List<T> slice, final BiFunction<T, StringBuilder, R> rewriter) {
+        // One buffer per task, reused for every URL in the slice
+        final StringBuilder buffer = new StringBuilder(128);
+        final List<R> rewritten = new ArrayList<>(slice.size());
+        for (final T item : slice) {
+            rewritten.add(rewriter.apply(item, buffer));
+        }
+        return rewritten;
+    }
+}
@@ -0,0 +1,21 @@
+package io.github.markwinton.pathfaces;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JSF view and its parameters, as would be passed to
+ * {@link jakarta.faces.application.ViewHandler#getBookmarkableURL}.
+ *
+ * @param viewId The view-id, for example <code>/index.xhtml</code>.
+ * @param parameters The view parameters; may be null.
+ */
+public record BookmarkableView(
+        String viewId,
+        Map<String, List<String>> parameters
+) {
+
+    public static BookmarkableView of(final String viewId, final Map<String, List<String>> parameters) {
+        return new BookmarkableView(viewId, parameters);
+    }
+}
@@ -0,0 +1,980 @@
+package io.github.markwinton.pathfaces;
+
+import io.github.markwinton.pathfaces.RouteMatcherClassFile.Code;
+import io.github.markwinton.pathfaces.RouteMatcherClassFile.Label;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.AALOAD;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.ACC_FINAL;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.ACC_PRIVATE;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.ACC_PUBLIC;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.ACC_STATIC;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.ACONST_NULL;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.ALOAD_0;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.ALOAD_1;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.ARETURN;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.CHECKCAST;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.DUP;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.ICONST_0;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.ICONST_1;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.IFEQ;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.IFNE;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.IFNONNULL;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.INVOKESPECIAL;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.IRETURN;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.LDC_W;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.POP;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.PUTSTATIC;
+import static io.github.markwinton.pathfaces.RouteMatcherClassFile.RETURN;
+
+/**
+ * <p>Compiles a {@link RewriteConfig} into a {@link RouteMatcher} whose bytecode is generated for that
+ * configuration, rather than walking its rules on each request.</p>
+ * <p>The configuration becomes a hidden class of static methods taking the request path and query string:</p>
+ * <ul>
+ *     <li>ignored paths and exact rule matches are <code>tableswitch</code> or <code>lookupswitch</code>
+ *     instructions on the path length and then on the characters that tell the candidate paths apart, ending in a
+ *     single comparison with the one path left;</li>
+ *     <li>placeholder patterns are narrowed by switches on the characters of their literal prefixes, leaving only
+ *     the patterns the path could match, tried in declared order;</li>
+ *     <li>vanity paths are looked up in their own compact table, between the two.</li>
+ * </ul>
+ * <p>Subtrees too large to share a method are generated as methods of their own, each well below the size above
+ * which the JIT will not compile a method. The class is the only implementation the filter's
+ * {@link RouteMatcher} call reaches. Placeholder patterns are compiled as the matcher is built, in declared order,
+ * up to the number kept resident by its {@link PatternCache}; any beyond that are compiled on first use.</p>
+ * <p>Rule precedence is identical to the interpreted matcher - exact matches first, then patterns in declared
+ * order, and an invalid pattern fails on first use just as it does there. Use {@link #of(RewriteConfig)}, which
+ * falls back to the interpreted matcher if the hidden class cannot be defined, as in a native image.</p>
+ */
+final class CompiledRouteMatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledRouteMatcher.class);
+    private static final String REGEX_META_CHARACTERS = "\\^$.|?*+()[]{}";
+    private static final String REGEX_QUANTIFIERS = "?*+{";
+    /**
+     * Set, to <code>runtime</code> or <code>buildtime</code>, only within a GraalVM native image.
+     */
+    static final String NATIVE_IMAGE_PROPERTY = "org.graalvm.nativeimage.imagecode";
+
+    /**
+     * Estimated bytes of code above which a subtree is generated as a method of its own; the JIT does not compile
+     * methods of more than 8000 bytes.
+     */
+    private static final int METHOD_SIZE_LIMIT = 2000;
+    /**
+     * Estimated bytes of code above which a subtree reached from several places is generated once, as a method.
+     */
+    private static final int SHARED_INLINE_LIMIT = 64;
+    /**
+     * Number of entries in the smallest {@link Block}.
+     */
+    private static final int BLOCK_SIZE = 8;
+    private static final int CALL_SIZE = 10;
+    private static final int MAX_STACK = 4;
+
+    private static final String CLASS_NAME = internalName(RouteMatcher.class.getPackageName() + ".GeneratedRouteMatcher");
+    private static final String THIS_CLASS = internalName(CompiledRouteMatcher.class.getName());
+    private static final String STRING = "java/lang/String";
+    private static final String ROUTE = "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;";
+    private static final String TEST = "(Ljava/lang/String;)Z";
+
+    /**
+     * Static fields of the generated class, initialized from the elements of its class data in this order.
+     */
+    private enum Table {
+        IGNORED_PATHS(String[].class),
+        IGNORED_PREFIXES(String[].class),
+        EXACT_PATHS(String[].class),
+        EXACT_RULES(RewriteRule[].class),
+        PATTERNS(PatternRule[].class),
+        VANITY_PATHS(VanityPaths.class);
+
+        private final Class<?> type;
+
+        Table(final Class<?> type) {
+            this.type = type;
+        }
+    }
+
+    /**
+     * The parts of matching a request, each generated as a tree of methods returning the rewritten URL or null,
+     * or whether the request path is ignored.
+     */
+    private enum Stage {
+        IGNORED_PATHS("ignoredPaths", false),
+        IGNORED_PREFIXES("ignoredPrefixes", false),
+        EXACT_PATHS("exactPaths", true),
+        PATTERNS("patterns", true);
+
+        private final String methodName;
+        private final boolean routes;
+
+        Stage(final String methodName, final boolean routes) {
+            this.methodName = methodName;
+            this.routes = routes;
+        }
+
+        private String descriptor() {
+            return routes ? ROUTE : TEST;
+        }
+    }
+
+    private final RouteMatcherClassFile classFile
+            = new RouteMatcherClassFile(CLASS_NAME, internalName(RouteMatcher.class.getName()));
+    private final Map<Stage, Map<List<Integer>, EntryList>> entryLists = new EnumMap<>(Stage.class);
+    private final Map<Entries, Entries> entries = new HashMap<>();
+    private final Map<Node, Integer> references = new IdentityHashMap<>();
+    private final Map<Node, Integer> sizes = new IdentityHashMap<>();
+    private final Map<Node, String> methods = new HashMap<>();
+    private final Queue<Node> pendingMethods = new ArrayDeque<>();
+    private final boolean[] exactHasPlaceholders;
+    private final List<Object> classData;
+
+    private CompiledRouteMatcher(final RewriteConfig rewriteConfig, final PatternCache patternCache) {
+        final List<String> exactPaths = new ArrayList<>();
+        final List<RewriteRule> exactRules = new ArrayList<>();
+        final Set<String> foldedExactPaths = new HashSet<>();
+        final List<PatternRule> patterns = new ArrayList<>();
+        for (final RewriteRule rewriteRule : rewriteConfig.rewriteRules()) {
+            final String regex = rewriteRule.urlPatternRegex();
+            patterns.add(new PatternRule(rewriteRule, literalPrefix(regex), patternCache.lazyPattern(regex)));
+            // First declared rule wins, as with the interpreted matcher
+            if (foldedExactPaths.add(foldCase(rewriteRule.prettyUrl()))) {
+                exactPaths.add(rewriteRule.prettyUrl());
+                exactRules.add(rewriteRule);
+            }
+        }
+        exactHasPlaceholders = new boolean[exactRules.size()];
+        for (int i = 0; i < exactHasPlaceholders.length; i++) {
+            exactHasPlaceholders[i] = exactRules.get(i).hasPlaceholders();
+        }
+        final Set<String> ignoredPaths = new LinkedHashSet<>();
+        final List<String> ignoredPrefixes = new ArrayList<>();
+        for (final IgnoredPath ignoredPath : rewriteConfig.ignoredPaths()) {
+            if (ignoredPath.isExactMatch()) {
+                ignoredPaths.add(ignoredPath.path());
+            }
+            else {
+                ignoredPrefixes.add(ignoredPath.path());
+            }
+        }
+        classData = List.of(
+                ignoredPaths.toArray(String[]::new),
+                ignoredPrefixes.toArray(String[]::new),
+                exactPaths.toArray(String[]::new),
+                exactRules.toArray(RewriteRule[]::new),
+                patterns.toArray(PatternRule[]::new),
+                rewriteConfig.vanityPaths()
+        );
+
+        final Map<Stage, Node> stages = new EnumMap<>(Stage.class);
+        stages.put(Stage.IGNORED_PATHS, stringSwitch(Stage.IGNORED_PATHS, List.copyOf(ignoredPaths), false));
+        stages.put(Stage.IGNORED_PREFIXES, prefixSwitch(Stage.IGNORED_PREFIXES, ignoredPrefixes,
+                indexes(ignoredPrefixes.size()), 0));
+        stages.put(Stage.EXACT_PATHS, stringSwitch(Stage.EXACT_PATHS, exactPaths, true));
+        stages.put(Stage.PATTERNS, prefixSwitch(Stage.PATTERNS,
+                patterns.stream().map(PatternRule::literalPrefix).toList(), indexes(patterns.size()), 0));
+        stages.values().forEach(this::countReferences);
+        generate(stages, !rewriteConfig.vanityPaths().isEmpty());
+
+        // Compiled here, as the filter starts, rather than by the first requests to reach each pattern
+        patternCache.preload(patterns.stream().map(PatternRule::pattern).toList());
+    }
+
+    /**
+     * Compile the given configuration, keeping up to {@value PatternCache#DEFAULT_CAPACITY} compiled patterns
+     * resident; see {@link #of(RewriteConfig, int)}.
+     */
+    static RouteMatcher of(final RewriteConfig rewriteConfig) {
+        return of(rewriteConfig, PatternCache.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Compile the given configuration, falling back to the interpreted matcher if that is not possible.
+     * @param rewriteConfig The configuration to compile; cannot be null.
+     * @param patternCacheSize The maximum number of compiled patterns to keep resident.
+     * @return Never null.
+     */
+    static RouteMatcher of(final RewriteConfig rewriteConfig, final int patternCacheSize) {
+        return of(rewriteConfig, patternCacheSize, MethodHandles.lookup());
+    }
+
+    /**
+     * As {@link #of(RewriteConfig, int)}, defining the hidden class with the given lookup, which needs full
+     * privilege access to this package.
+     */
+    static RouteMatcher of(
+            final RewriteConfig rewriteConfig, final int patternCacheSize, final MethodHandles.Lookup lookup
+    ) {
+        if (System.getProperty(NATIVE_IMAGE_PROPERTY) != null) {
+            LOG.info("Classes cannot be defined at run time in a native image, using interpreted matching");
+            return RouteMatcher.interpreted(rewriteConfig);
+        }
+        try {
+            final CompiledRouteMatcher compiler
+                    = new CompiledRouteMatcher(rewriteConfig, PatternCache.of(patternCacheSize));
+            final Class<?> matcherClass = lookup
+                    .defineHiddenClassWithClassData(compiler.classFile.bytes(), compiler.classData, true)
+                    .lookupClass();
+            return (RouteMatcher) matcherClass.getConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | RuntimeException | Error e) {
+            if (e instanceof VirtualMachineError virtualMachineError) {
+                throw virtualMachineError;
+            }
+            // Defining the class can fail with errors other than LinkageError where it is not supported
+            LOG.warn("Unable to compile Pathfaces configuration, falling back to interpreted matching: {}",
+                    e.getMessage(), e);
+            return RouteMatcher.interpreted(rewriteConfig);
+        }
+    }
+
+    /**
+     * <p>Switch on the whole of the request path, to the entry of the given stage equal to it.</p>
+     * <p>The paths are grouped by length, then split on whichever character position best tells them apart,
+     * recursively, until a single path is left to compare in full.</p>
+     * @param paths Distinct paths, indexed as the stage's entries; where <code>ignoreCase</code>, distinct ignoring
+     *              case.
+     */
+    private Node stringSwitch(final Stage stage, final List<String> paths, final boolean ignoreCase) {
+        if (paths.isEmpty()) {
+            return miss(stage);
+        }
+        final TreeMap<Integer, List<Integer>> byLength = new TreeMap<>();
+        for (int i = 0; i < paths.size(); i++) {
+            byLength.computeIfAbsent(paths.get(i).length(), length -> new ArrayList<>()).add(i);
+        }
+        final List<Node> branches = byLength.values().stream()
+                .map(group -> pathSwitch(stage, paths, group, ignoreCase))
+                .toList();
+        return new Switch(stage, Selector.LENGTH, 0, toArray(byLength.keySet()), branches, miss(stage));
+    }
+
+    private Node pathSwitch(
+            final Stage stage, final List<String> paths, final List<Integer> group, final boolean ignoreCase
+    ) {
+        final int position = discriminatingPosition(paths, group, ignoreCase);
+        if (position < 0) {
+            // One path left, or paths which only differ in surrogate pairs: compare in full, in declared order
+            return entries(stage, group, group.size(), -1);
+        }
+        final TreeMap<Integer, List<Integer>> byChar = new TreeMap<>();
+        for (final int index : group) {
+            byChar.computeIfAbsent(charAt(paths.get(index), position, ignoreCase), c -> new ArrayList<>()).add(index);
+        }
+        final List<Node> branches = byChar.values().stream()
+                .map(subgroup -> pathSwitch(stage, paths, subgroup, ignoreCase))
+                .toList();
+        return new Switch(stage, ignoreCase ? Selector.FOLDED_CHAR : Selector.CHAR, position,
+                toArray(byChar.keySet()), branches, miss(stage));
+    }
+
+    /**
+     * The character position at which the given paths, all of the same length, have the most distinct values; -1
+     * if there is only one path or none of the positions tell them apart.
+     */
+    private static int discriminatingPosition(
+            final List<String> paths, final List<Integer> group, final boolean ignoreCase
+    ) {
+        if (group.size() < 2) {
+            return -1;
+        }
+        final int length = paths.get(group.get(0)).length();
+        int bestPosition = -1;
+        int bestCount = 1;
+        final Set<Integer> chars = new HashSet<>();
+        for (int position = 0; position < length; position++) {
+            chars.clear();
+            for (final int index : group) {
+                final char c = paths.get(index).charAt(position);
+                // Case-insensitive comparison of supplementary characters is not char by char
+                if (ignoreCase && Character.isSurrogate(c)) {
+                    chars.clear();
+                    break;
+                }
+                chars.add(charAt(paths.get(index), position, ignoreCase));
+            }
+            if (chars.size() > bestCount) {
+                bestPosition = position;
+                bestCount = chars.size();
+            }
+        }
+        return bestPosition;
+    }
+
+    /**
+     * <p>Switch on the literal prefixes of an ordered list of candidates, narrowing them to those the request path
+     * could start with.</p>
+     * <p>Each level switches on the character at <code>depth</code>. Candidates with shorter prefixes have already
+     * been matched as far as their prefix goes, so are kept on every branch and make up the default; the rest are
+     * only kept on the branch for their own character. Positions where the remaining candidates all have the same
+     * character are skipped, and switching stops once there is at most one candidate with a longer prefix, so each
+     * candidate must still check its own prefix.</p>
+     * @param prefixes The literal prefix of each of the stage's entries.
+     * @param candidates Indexes of the candidate entries, in declared order.
+     */
+    private Node prefixSwitch(
+            final Stage stage, final List<String> prefixes, final List<Integer> candidates, final int depth
+    ) {
+        final List<Integer> matched = new ArrayList<>();
+        final TreeMap<Integer, List<Integer>> byChar = new TreeMap<>();
+        int own = -1;
+        for (final int candidate : candidates) {
+            final String prefix = prefixes.get(candidate);
+            if (prefix.length() <= depth) {
+                matched.add(candidate);
+            }
+            else {
+                byChar.computeIfAbsent((int) prefix.charAt(depth), c -> new ArrayList<>());
+                own = candidate;
+            }
+        }
+        if (candidates.size() - matched.size() <= 1) {
+            final int ownIndex = own;
+            final int split = own < 0
+                    ? matched.size()
+                    : (int) matched.stream().filter(candidate -> candidate < ownIndex).count();
+            return entries(stage, matched, split, own);
+        }
+        if (byChar.size() == 1) {
+            return prefixSwitch(stage, prefixes, candidates, depth + 1);
+        }
+        byChar.forEach((c, branch) -> {
+            for (final int candidate : candidates) {
+                final String prefix = prefixes.get(candidate);
+                if (prefix.length() <= depth || prefix.charAt(depth) == c) {
+                    branch.add(candidate);
+                }
+            }
+        });
+        final List<Node> branches = byChar.values().stream()
+                .map(branch -> prefixSwitch(stage, prefixes, branch, depth + 1))
+                .toList();
+        return new Switch(stage, Selector.CHAR_OR_END, depth, toArray(byChar.keySet()), branches,
+                entries(stage, matched, matched.size(), -1));
+    }
+
+    private Entries miss(final Stage stage) {
+        return entries(stage, List.of(), 0, -1);
+    }
+
+    private Entries entries(final Stage stage, final List<Integer> base, final int split, final int own) {
+        final EntryList entryList = entryLists.computeIfAbsent(stage, s -> new HashMap<>())
+                .computeIfAbsent(base, b -> new EntryList(stage, b.stream().mapToInt(Integer::intValue).toArray()));
+        final Entries node = new Entries(entryList, split, own);
+        final Entries existing = entries.putIfAbsent(node, node);
+        return existing != null ? existing : node;
+    }
+
+    private void countReferences(final Node node) {
+        if (references.merge(node, 1, Integer::sum) == 1 && node instanceof Switch aSwitch) {
+            aSwitch.branches.forEach(this::countReferences);
+            countReferences(aSwitch.fallback);
+        }
+    }
+
+    /**
+     * Generate the class: its constructor, a static initializer reading the {@link Table}s from class data,
+     * <code>getRewrittenUrl</code>, a <code>route</code> method calling each stage in turn, and the stages.
+     */
+    private void generate(final Map<Stage, Node> stages, final boolean hasVanityPaths) {
+        final Code constructor = classFile.method(ACC_PUBLIC, "<init>", "()V", 1)
+                .op(ALOAD_0)
+                .op(INVOKESPECIAL, classFile.methodConstant("java/lang/Object", "<init>", "()V"));
+        constructor.op(RETURN);
+
+        final Code classInitializer = classFile.method(ACC_STATIC, "<clinit>", "()V", MAX_STACK);
+        for (final Table table : Table.values()) {
+            classFile.field(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, table.name(), table.type.descriptorString());
+            final String typeName = table.type.isArray()
+                    ? table.type.descriptorString()
+                    : internalName(table.type.getName());
+            classInitializer
+                    .invokeStatic("java/lang/invoke/MethodHandles", "lookup",
+                            "()Ljava/lang/invoke/MethodHandles$Lookup;")
+                    .op(LDC_W, classFile.stringConstant("_"))
+                    .op(LDC_W, classFile.classConstant(typeName))
+                    .loadInt(table.ordinal())
+                    .invokeStatic("java/lang/invoke/MethodHandles", "classDataAt",
+                            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;I)"
+                                    + "Ljava/lang/Object;")
+                    .op(CHECKCAST, classFile.classConstant(typeName))
+                    .op(PUTSTATIC, classFile.fieldConstant(CLASS_NAME, table.name(), table.type.descriptorString()));
+        }
+        classInitializer.op(RETURN);
+
+        final String requestDetails = internalName(RequestDetails.class.getName());
+        classFile.method(ACC_PUBLIC, "getRewrittenUrl", "(L" + requestDetails + ";)Ljava/lang/String;", 2)
+                .op(ALOAD_1)
+                .invokeVirtual(requestDetails, "requestUrlWithoutParam", "()Ljava/lang/String;")
+                .op(ALOAD_1)
+                .invokeVirtual(requestDetails, "requestParams", "()Ljava/lang/String;")
+                .invokeStatic(CLASS_NAME, "route", ROUTE)
+                .op(ARETURN);
+
+        final Body route = new Body(classFile.method(ACC_PRIVATE | ACC_STATIC, "route", ROUTE, MAX_STACK),
+                Stage.PATTERNS);
+        final Label ignored = new Label(false);
+        boolean anyIgnored = false;
+        for (final Stage stage : List.of(Stage.IGNORED_PATHS, Stage.IGNORED_PREFIXES)) {
+            if (!isMiss(stages.get(stage))) {
+                route.code.op(ALOAD_0)
+                        .invokeStatic(CLASS_NAME, stage.methodName, TEST)
+                        .jump(IFNE, ignored);
+                anyIgnored = true;
+            }
+        }
+        if (!isMiss(stages.get(Stage.EXACT_PATHS))) {
+            route.call(Stage.EXACT_PATHS.methodName);
+        }
+        if (hasVanityPaths) {
+            // Vanity paths are also exact matches, but only checked once the rules have been
+            getTable(route.code, Table.VANITY_PATHS)
+                    .op(ALOAD_0)
+                    .op(ALOAD_1)
+                    .invokeStatic(THIS_CLASS, "rewriteVanity",
+                            "(L" + internalName(VanityPaths.class.getName()) + ";" + ROUTE.substring(1))
+                    .op(DUP)
+                    .jump(IFNONNULL, route.found())
+                    .op(POP);
+        }
+        if (isMiss(stages.get(Stage.PATTERNS))) {
+            route.miss();
+        }
+        else {
+            route.tailCall(Stage.PATTERNS.methodName);
+        }
+        if (anyIgnored) {
+            route.code.bind(ignored);
+            route.miss();
+        }
+        route.finish();
+
+        stages.forEach((stage, node) -> {
+            if (!isMiss(node)) {
+                final Body body = new Body(
+                        classFile.method(ACC_PRIVATE | ACC_STATIC, stage.methodName, stage.descriptor(), MAX_STACK),
+                        stage);
+                emit(body, node);
+                body.finish();
+            }
+        });
+        while (!pendingMethods.isEmpty()) {
+            final Node node = pendingMethods.remove();
+            final Stage stage = stage(node);
+            final Body body = new Body(
+                    classFile.method(ACC_PRIVATE | ACC_STATIC, methods.get(node), stage.descriptor(), MAX_STACK),
+                    stage);
+            emit(body, node);
+            body.finish();
+        }
+    }
+
+    private void emit(final Body body, final Node node) {
+        if (node instanceof Switch aSwitch) {
+            emitSwitch(body, aSwitch);
+        }
+        else if (node instanceof Entries entryRange) {
+            final EntryList base = entryRange.base();
+            emitRange(body, base, 0, entryRange.split());
+            if (entryRange.own() >= 0) {
+                emitEntry(body, entryRange.own());
+            }
+            emitRange(body, base, entryRange.split(), base.indexes.length);
+            body.miss();
+        }
+        else if (node instanceof Block block) {
+            final int size = BLOCK_SIZE << block.level();
+            if (block.level() == 0) {
+                for (int i = block.from(); i < block.from() + size; i++) {
+                    emitEntry(body, block.base().indexes[i]);
+                }
+                body.miss();
+            }
+            else {
+                body.call(method(new Block(block.base(), block.from(), block.level() - 1)));
+                body.tailCall(method(new Block(block.base(), block.from() + size / 2, block.level() - 1)));
+            }
+        }
+    }
+
+    private void emitSwitch(final Body body, final Switch aSwitch) {
+        final Code code = body.code.op(ALOAD_0);
+        switch (aSwitch.selector) {
+            case LENGTH -> code.invokeVirtual(STRING, "length", "()I");
+            case CHAR -> code.loadInt(aSwitch.position).invokeVirtual(STRING, "charAt", "(I)C");
+            case FOLDED_CHAR -> code.loadInt(aSwitch.position)
+                    .invokeVirtual(STRING, "charAt", "(I)C")
+                    .invokeStatic(THIS_CLASS, "foldCase", "(C)C");
+            case CHAR_OR_END -> code.loadInt(aSwitch.position)
+                    .invokeStatic(THIS_CLASS, "charAt", "(Ljava/lang/String;I)I");
+        }
+        final Label[] targets = new Label[aSwitch.keys.length];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = new Label(false);
+        }
+        final Label fallback = new Label(false);
+        code.switchOn(aSwitch.keys, targets, fallback);
+        for (int i = 0; i < targets.length; i++) {
+            code.bind(targets[i]);
+            emitChild(body, aSwitch.branches.get(i));
+        }
+        code.bind(fallback);
+        emitChild(body, aSwitch.fallback);
+    }
+
+    /**
+     * Emit a node in place, or as a call to a method of its own where it is large or shared.
+     */
+    private void emitChild(final Body body, final Node node) {
+        if (isMiss(node)) {
+            body.miss();
+            return;
+        }
+        final int size = size(node);
+        if ((references.get(node) > 1 && size > SHARED_INLINE_LIMIT)
+                || body.code.size() + size > METHOD_SIZE_LIMIT) {
+            body.tailCall(method(node));
+        }
+        else {
+            emit(body, node);
+        }
+    }
+
+    /**
+     * <p>Try the entries <code>from</code> to <code>to</code> of the list, in order.</p>
+     * <p>Runs of entries aligned to a {@link Block} are called as that block's method, so lists which differ only in
+     * where one other entry is tried share most of their code.</p>
+     */
+    private void emitRange(final Body body, final EntryList base, final int from, final int to) {
+        for (int i = from; i < to; ) {
+            final int level = blockLevel(i, to);
+            if (level < 0) {
+                emitEntry(body, base.indexes[i]);
+                i++;
+            }
+            else {
+                body.call(method(new Block(base, i, level)));
+                i += BLOCK_SIZE << level;
+            }
+        }
+    }
+
+    /**
+     * Emit code which returns if the request matches the stage's entry, and otherwise continues with an empty stack.
+     */
+    private void emitEntry(final Body body, final int index) {
+        final Code code = body.code;
+        switch (body.stage) {
+            case IGNORED_PATHS -> getTable(code.op(ALOAD_0), Table.IGNORED_PATHS, index)
+                    .invokeVirtual(STRING, "equals", "(Ljava/lang/Object;)Z")
+                    .jump(IFNE, body.found());
+            case IGNORED_PREFIXES -> getTable(code.op(ALOAD_0), Table.IGNORED_PREFIXES, index)
+                    .invokeVirtual(STRING, "startsWith", "(Ljava/lang/String;)Z")
+                    .jump(IFNE, body.found());
+            case EXACT_PATHS -> {
+                final Label next = new Label(false);
+                getTable(code.op(ALOAD_0), Table.EXACT_PATHS, index)
+                        .invokeVirtual(STRING, "equalsIgnoreCase", "(Ljava/lang/String;)Z")
+                        .jump(IFEQ, next);
+                final String rewriteRule = internalName(RewriteRule.class.getName());
+                getTable(code, Table.EXACT_RULES, index);
+                if (exactHasPlaceholders[index]) {
+                    code.op(ALOAD_0)
+                            .op(ALOAD_1)
+                            .invokeStatic(THIS_CLASS, "rewriteExact", "(L" + rewriteRule + ";" + ROUTE.substring(1));
+                }
+                else {
+                    // Without placeholders a rule always rewrites to its target path
+                    code.invokeVirtual(rewriteRule, "targetPath", "()Ljava/lang/String;")
+                            .op(ALOAD_1)
+                            .invokeStatic(internalName(RequestDetails.class.getName()), "withRequestParams", ROUTE);
+                }
+                code.op(ARETURN).bind(next);
+            }
+            case PATTERNS -> getTable(code, Table.PATTERNS, index)
+                    .op(ALOAD_0)
+                    .op(ALOAD_1)
+                    .invokeStatic(THIS_CLASS, "rewritePattern",
+                            "(L" + internalName(PatternRule.class.getName()) + ";" + ROUTE.substring(1))
+                    .op(DUP)
+                    .jump(IFNONNULL, body.found())
+                    .op(POP);
+        }
+    }
+
+    private Code getTable(final Code code, final Table table) {
+        return code.getStatic(CLASS_NAME, table.name(), table.type.descriptorString());
+    }
+
+    private Code getTable(final Code code, final Table table, final int index) {
+        return getTable(code, table).loadInt(index).op(AALOAD);
+    }
+
+    /**
+     * The name of the method generated for the node, queuing it to be generated if it has not been.
+     */
+    private String method(final Node node) {
+        final String existing = methods.get(node);
+        if (existing != null) {
+            return existing;
+        }
+        final String name = "m" + methods.size();
+        methods.put(node, name);
+        pendingMethods.add(node);
+        return name;
+    }
+
+    /**
+     * Estimated size of the code to emit the node in place, including its children.
+     */
+    private int size(final Node node) {
+        final Integer cached = sizes.get(node);
+        if (cached != null) {
+            return cached;
+        }
+        int size;
+        if (node instanceof Switch aSwitch) {
+            size = 8 + 12 + 8 * aSwitch.keys.length + size(aSwitch.fallback);
+            for (final Node branch : aSwitch.branches) {
+                size += size(branch);
+            }
+        }
+        else if (node instanceof Entries entryRange) {
+            final int entrySize = entrySize(entryRange.base().stage);
+            size = rangeSize(entryRange.base(), 0, entryRange.split())
+                    + (entryRange.own() >= 0 ? entrySize : 0)
+                    + rangeSize(entryRange.base(), entryRange.split(), entryRange.base().indexes.length)
+                    + 2;
+        }
+        else {
+            size = CALL_SIZE;
+        }
+        sizes.put(node, size);
+        return size;
+    }
+
+    private static int rangeSize(final EntryList base, final int from, final int to) {
+        int size = 0;
+        for (int i = from; i < to; ) {
+            final int level = blockLevel(i, to);
+            if (level < 0) {
+                size += entrySize(base.stage);
+                i++;
+            }
+            else {
+                size += CALL_SIZE;
+                i += BLOCK_SIZE << level;
+            }
+        }
+        return size;
+    }
+
+    private static int entrySize(final Stage stage) {
+        return switch (stage) {
+            case EXACT_PATHS -> 28;
+            case PATTERNS -> 18;
+            case IGNORED_PATHS, IGNORED_PREFIXES -> 15;
+        };
+    }
+
+    /**
+     * The level of the largest {@link Block} starting at <code>from</code> and ending by <code>to</code>, or -1 if
+     * there is none; blocks of level <code>n</code> start at multiples of their size,
+     * <code>BLOCK_SIZE &lt;&lt; n</code>.
+     */
+    private static int blockLevel(final int from, final int to) {
+        if (from % BLOCK_SIZE != 0 || from + BLOCK_SIZE > to) {
+            return -1;
+        }
+        int level = 0;
+        while (from % (BLOCK_SIZE << (level + 1)) == 0 && from + (BLOCK_SIZE << (level + 1)) <= to) {
+            level++;
+        }
+        return level;
+    }
+
+    private static Stage stage(final Node node) {
+        if (node instanceof Switch aSwitch) {
+            return aSwitch.stage;
+        }
+        if (node instanceof Entries entryRange) {
+            return entryRange.base().stage;
+        }
+        return ((Block) node).base().stage;
+    }
+
+    private static boolean isMiss(final Node node) {
+        return node instanceof Entries entryRange && entryRange.own() < 0 && entryRange.base().indexes.length == 0;
+    }
+
+    private static List<Integer> indexes(final int size) {
+        final List<Integer> indexes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            indexes.add(i);
+        }
+        return indexes;
+    }
+
+    private static int[] toArray(final Set<Integer> keys) {
+        return keys.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static String internalName(final String className) {
+        return className.replace('.', '/');
+    }
+
+    private static int charAt(final String path, final int index, final boolean ignoreCase) {
+        return ignoreCase ? foldCase(path.charAt(index)) : path.charAt(index);
+    }
+
+    /**
+     * Called by generated code.
+     * @return The character at the given index, or -1 if the path is not that long.
+     */
+    static int charAt(final String path, final int index) {
+        return index < path.length() ? path.charAt(index) : -1;
+    }
+
+    /**
+     * Called by generated code.
+     */
+    static String rewriteExact(
+            final RewriteRule rewriteRule, final String requestUrlWithoutParam, final String requestParams
+    ) {
+        return RequestDetails.withRequestParams(rewriteRule.rewrite(requestUrlWithoutParam), requestParams);
+    }
+
+    /**
+     * Called by generated code.
+     */
+    static String rewriteVanity(
+            final VanityPaths vanityPaths, final String requestUrlWithoutParam, final String requestParams
+    ) {
+        final String viewId = vanityPaths.get(requestUrlWithoutParam);
+        return viewId == null ? null : RequestDetails.withRequestParams(viewId, requestParams);
+    }
+
+    /**
+     * Called by generated code.
+     */
+    static String rewritePattern(
+            final PatternRule patternRule, final String requestUrlWithoutParam, final String requestParams
+    ) {
+        if (!requestUrlWithoutParam.startsWith(patternRule.literalPrefix())) {
+            return null;
+        }
+        final Matcher urlMatcher = patternRule.pattern().get().matcher(requestUrlWithoutParam);
+        return urlMatcher.matches()
+                ? RequestDetails.withRequestParams(patternRule.rule().rewrite(urlMatcher), requestParams)
+                : null;
+    }
+
+    /**
+     * Folds the case of each character the same way {@link String#equalsIgnoreCase(String)} compares them, so
+     * that two strings fold to the same key exactly when they are equal ignoring case.
+     */
+    static String foldCase(final String value) {
+        final char[] folded = new char[value.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = foldCase(value.charAt(i));
+        }
+        return new String(folded);
+    }
+
+    static char foldCase(final char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * The longest literal string every match of the given regex must start with; empty if there is none.
+     */
+    static String literalPrefix(final String regex) {
+        if (regex.indexOf('|') >= 0) {
+            // Alternation means a match need not start with anything in particular
+            return "";
+        }
+        int end = 0;
+        while (end < regex.length() && REGEX_META_CHARACTERS.indexOf(regex.charAt(end)) < 0) {
+            end++;
+        }
+        if (end < regex.length() && end > 0 && REGEX_QUANTIFIERS.indexOf(regex.charAt(end)) >= 0) {
+            // The last literal character is quantified, so may be absent
+            end--;
+        }
+        return regex.substring(0, end);
+    }
+
+    /**
+     * A placeholder rule as the generated code tries it.
+     */
+    record PatternRule(
+            RewriteRule rule,
+            String literalPrefix,
+            PatternCache.LazyPattern pattern
+    ) {
+    }
+
+    /**
+     * What a {@link Switch} switches on: the length of the request path, or its character at a position - as is,
+     * folded as {@link #foldCase(char)}, or -1 past the end of the path.
+     */
+    private enum Selector {
+        LENGTH, CHAR, FOLDED_CHAR, CHAR_OR_END
+    }
+
+    /**
+     * A node of a stage's decision tree; every node either returns the stage's result or, if no entry matched, its
+     * miss - null, or false.
+     */
+    private sealed interface Node permits Switch, Entries, Block {
+    }
+
+    /**
+     * A switch to one branch per key, or the fallback; compared by identity.
+     */
+    private static final class Switch implements Node {
+
+        private final Stage stage;
+        private final Selector selector;
+        private final int position;
+        private final int[] keys;
+        private final List<Node> branches;
+        private final Node fallback;
+
+        private Switch(
+                final Stage stage, final Selector selector, final int position, final int[] keys,
+                final List<Node> branches, final Node fallback
+        ) {
+            this.stage = stage;
+            this.selector = selector;
+            this.position = position;
+            this.keys = keys;
+            this.branches = branches;
+            this.fallback = fallback;
+        }
+    }
+
+    /**
+     * The entries of <code>base</code> before <code>split</code>, then the entry <code>own</code> unless it is -1,
+     * then the rest of <code>base</code>, tried in that order.
+     */
+    private record Entries(EntryList base, int split, int own) implements Node {
+    }
+
+    /**
+     * The <code>BLOCK_SIZE &lt;&lt; level</code> entries of <code>base</code> from <code>from</code>, always generated
+     * as a method of its own, calling the two blocks of the level below.
+     */
+    private record Block(EntryList base, int from, int level) implements Node {
+    }
+
+    /**
+     * Indexes of a stage's entries, interned so that equal lists are the same instance and compared by identity.
+     */
+    private static final class EntryList {
+
+        private final Stage stage;
+        private final int[] indexes;
+
+        private EntryList(final Stage stage, final int[] indexes) {
+            this.stage = stage;
+            this.indexes = indexes;
+        }
+    }
+
+    /**
+     * A generated method being written, with the label it jumps to once an entry has matched: for stages returning
+     * a rewritten URL, holding that URL on the stack.
+     */
+    private static final class Body {
+
+        private final Code code;
+        private final Stage stage;
+        private Label found;
+
+        private Body(final Code code, final Stage stage) {
+            this.code = code;
+            this.stage = stage;
+        }
+
+        private Label found() {
+            if (found == null) {
+                found = new Label(stage.routes);
+            }
+            return found;
+        }
+
+        /**
+         * Call another method of the stage, returning its result unless it missed.
+         */
+        private void call(final String methodName) {
+            if (stage.routes) {
+                code.op(ALOAD_0)
+                        .op(ALOAD_1)
+                        .invokeStatic(CLASS_NAME, methodName, ROUTE)
+                        .op(DUP)
+                        .jump(IFNONNULL, found())
+                        .op(POP);
+            }
+            else {
+                code.op(ALOAD_0)
+                        .invokeStatic(CLASS_NAME, methodName, TEST)
+                        .jump(IFNE, found());
+            }
+        }
+
+        private void tailCall(final String methodName) {
+            if (stage.routes) {
+                code.op(ALOAD_0)
+                        .op(ALOAD_1)
+                        .invokeStatic(CLASS_NAME, methodName, ROUTE)
+                        .op(ARETURN);
+            }
+            else {
+                code.op(ALOAD_0)
+                        .invokeStatic(CLASS_NAME, methodName, TEST)
+                        .op(IRETURN);
+            }
+        }
+
+        private void miss() {
+            if (stage.routes) {
+                code.op(ACONST_NULL).op(ARETURN);
+            }
+            else {
+                code.op(ICONST_0).op(IRETURN);
+            }
+        }
+
+        private void finish() {
+            if (found == null) {
+                return;
+            }
+            code.bind(found);
+            if (stage.routes) {
+                code.op(ARETURN);
+            }
+            else {
+                code.op(ICONST_1).op(IRETURN);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.markwinton.pathfaces;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * <p>Response wrapper which rewrites links to mapped view-ids in HTML written via {@link #getWriter()}, using a
+ * {@link LinkRewritingWriter}.</p>
+ * <p>Rewriting changes the length of the response, so a content length is held back until the output is chosen,
+ * and dropped if the writer is wrapped. Output written via {@link #getOutputStream()}, and its content length, are
+ * passed through unchanged.</p>
+ */
+final class LinkRewritingResponse extends HttpServletResponseWrapper {
+
+    private final ViewIndex viewIndex;
+    private final String contextPath;
+    private LinkRewritingWriter linkWriter;
+    private PrintWriter writer;
+    private boolean outputStreamUsed;
+    // A content length set before the output was chosen, or -1
+    private long pendingContentLength = -1;
+
+    LinkRewritingResponse(final HttpServletResponse response, final ViewIndex viewIndex, final String contextPath) {
+        super(response);
+        this.viewIndex = viewIndex;
+        this.contextPath = contextPath;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            final PrintWriter wrappedWriter = super.getWriter();
+            if (isHtml()) {
+                linkWriter = new LinkRewritingWriter(wrappedWriter, viewIndex, contextPath);
+                writer = new PrintWriter(linkWriter);
+            }
+            else {
+                writer = wrappedWriter;
+                releaseContentLength();
+            }
+        }
+        return writer;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        final ServletOutputStream outputStream = super.getOutputStream();
+        outputStreamUsed = true;
+        releaseContentLength();
+        return outputStream;
+    }
+
+    @Override
+    public void setContentLength(final int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(final long len) {
+        if (linkWriter != null) {
+            return;
+        }
+        if (writer != null || outputStreamUsed) {
+            super.setContentLengthLong(len);
+        }
+        else {
+            pendingContentLength = len;
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if (linkWriter != null) {
+            linkWriter.reset();
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        pendingContentLength = -1;
+        if (linkWriter != null) {
+            linkWriter.reset();
+        }
+    }
+
+    /**
+     * Write out anything still held by the link scanner; called once the request has been handled.
+     */
+    void finish() throws IOException {
+        if (linkWriter != null) {
+            writer.flush();
+            linkWriter.finish();
+        }
+        else {
+            // No body was written, as for a HEAD request, so the length set is the one the client expects
+            releaseContentLength();
+        }
+    }
+
+    private void releaseContentLength() {
+        if (pendingContentLength >= 0) {
+            super.setContentLengthLong(pendingContentLength);
+            pendingContentLength = -1;
+        }
+    }
+
+    private boolean isHtml() {
+        final String contentType = getContentType();
+        // Plain servlet output written as text frequently has no content type set
+        return contentType == null || contentType.toLowerCase(Locale.ROOT).contains("html");
+    }
+}
@@ -0,0 +1,273 @@
+package io.github.markwinton.pathfaces;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Writer which rewrites <code>href</code>, <code>action</code> and <code>src</code> attributes pointing at
+ * mapped view-ids to their pretty URLs as the markup streams through it, for links not produced via
+ * {@link RewriteViewHandler#getBookmarkableURL}.</p>
+ * <p>The markup is scanned incrementally with a small state machine; everything other than the value of a quoted
+ * link attribute is passed straight through, and attribute values are looked up in the {@link ViewIndex} from the
+ * scan buffer without creating strings for them. Values longer than {@link #MAX_VALUE_LENGTH}, unquoted values,
+ * relative URLs and links missing a value for one of the pretty URL's placeholders are left unchanged.</p>
+ * <p>This is a lightweight scanner rather than an HTML parser; it does not track comments or script content.</p>
+ */
+final class LinkRewritingWriter extends Writer {
+
+    static final int MAX_VALUE_LENGTH = 2048;
+    private static final String[] LINK_ATTRIBUTES = {"href", "action", "src"};
+
+    private enum State {
+        TEXT, TAG, NAME, AFTER_NAME, BEFORE_VALUE, VALUE, QUOTED, UNQUOTED
+    }
+
+    private final Writer out;
+    private final ViewIndex viewIndex;
+    private final String contextPath;
+    private final char[] name = new char[6];
+    private final char[] value = new char[MAX_VALUE_LENGTH];
+    private final StringBuilder buffer = new StringBuilder(128);
+    private final StringBuilder link = new StringBuilder(128);
+    private State state = State.TEXT;
+    private int nameLength;
+    private int valueLength;
+    private boolean isLinkAttribute;
+    private char quote;
+
+    LinkRewritingWriter(final Writer out, final ViewIndex viewIndex, final String contextPath) {
+        this.out = out;
+        this.viewIndex = viewIndex;
+        this.contextPath = contextPath;
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+        final int end = off + len;
+        // Start of the run of characters to be passed through unchanged
+        int runStart = off;
+        for (int i = off; i < end; i++) {
+            final char c = cbuf[i];
+            if (state == State.VALUE) {
+                if (c == quote) {
+                    writeValue();
+                    state = State.TAG;
+                    runStart = i;
+                }
+                else if (valueLength == MAX_VALUE_LENGTH) {
+                    out.write(value, 0, valueLength);
+                    state = State.QUOTED;
+                    runStart = i;
+                }
+                else {
+                    value[valueLength++] = c;
+                }
+                continue;
+            }
+            state = next(c);
+            if (state == State.VALUE) {
+                out.write(cbuf, runStart, i + 1 - runStart);
+                valueLength = 0;
+            }
+        }
+        if (state != State.VALUE) {
+            out.write(cbuf, runStart, end - runStart);
+        }
+    }
+
+    private State next(final char c) {
+        return switch (state) {
+            case TEXT -> c == '<' ? State.TAG : State.TEXT;
+            case TAG -> afterTag(c);
+            case NAME -> {
+                if (isNameCharacter(c)) {
+                    appendName(c);
+                    yield State.NAME;
+                }
+                yield afterName(c);
+            }
+            case AFTER_NAME -> isNameCharacter(c) ? startName(c) : afterName(c);
+            case BEFORE_VALUE -> {
+                if (isWhitespace(c)) {
+                    yield State.BEFORE_VALUE;
+                }
+                if (c == '"' || c == '\'') {
+                    quote = c;
+                    yield isLinkAttribute ? State.VALUE : State.QUOTED;
+                }
+                yield c == '>' ? State.TEXT : State.UNQUOTED;
+            }
+            case QUOTED -> c == quote ? State.TAG : State.QUOTED;
+            case UNQUOTED -> c == '>' ? State.TEXT : isWhitespace(c) ? State.TAG : State.UNQUOTED;
+            case VALUE -> throw new IllegalStateException("Attribute values are handled by write");
+        };
+    }
+
+    private State afterTag(final char c) {
+        if (c == '>') {
+            return State.TEXT;
+        }
+        if (c == '"' || c == '\'') {
+            quote = c;
+            return State.QUOTED;
+        }
+        return isNameCharacter(c) ? startName(c) : State.TAG;
+    }
+
+    private State afterName(final char c) {
+        if (isWhitespace(c)) {
+            return State.AFTER_NAME;
+        }
+        if (c == '=') {
+            isLinkAttribute = isLinkAttribute();
+            return State.BEFORE_VALUE;
+        }
+        return c == '>' ? State.TEXT : State.TAG;
+    }
+
+    private State startName(final char c) {
+        nameLength = 0;
+        appendName(c);
+        return State.NAME;
+    }
+
+    private void appendName(final char c) {
+        if (nameLength < name.length) {
+            name[nameLength] = Character.toLowerCase(c);
+        }
+        nameLength++;
+    }
+
+    private boolean isLinkAttribute() {
+        for (final String attribute : LINK_ATTRIBUTES) {
+            if (nameMatches(attribute)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean nameMatches(final String attribute) {
+        if (attribute.length() != nameLength) {
+            return false;
+        }
+        for (int i = 0; i < nameLength; i++) {
+            if (attribute.charAt(i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameCharacter(final char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == ':' || c == '.';
+    }
+
+    private static boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    /**
+     * Write the buffered attribute value, rewritten if it points at a mapped view-id.
+     */
+    private void writeValue() throws IOException {
+        final int pathStart = getPathStart();
+        if (pathStart < 0) {
+            out.write(value, 0, valueLength);
+            return;
+        }
+        final int pathEnd = indexOf(pathStart, '?', '#');
+        final RewriteRule rule = viewIndex.getRule(value, pathStart, pathEnd - pathStart);
+        if (rule == null) {
+            out.write(value, 0, valueLength);
+            return;
+        }
+        final int queryEnd = indexOf(pathEnd, '#', '#');
+        final Map<String, List<String>> parameters;
+        try {
+            parameters = pathEnd < queryEnd
+                    ? RewriteResult.parseQuery(new String(value, pathEnd + 1, queryEnd - pathEnd - 1)
+                            .replace("&amp;", "&"))
+                    : Map.of();
+        }
+        catch (IllegalArgumentException e) {
+            // Malformed percent-encoding; leave the link as it is
+            out.write(value, 0, valueLength);
+            return;
+        }
+        if (!rule.hasPathParams(parameters)) {
+            // The pretty URL would have an empty placeholder, which the rule would not match
+            out.write(value, 0, valueLength);
+            return;
+        }
+        final RewriteResult result = rule.insertPathParams(parameters, buffer);
+        link.setLength(0);
+        Markup.appendEscaped(link, contextPath);
+        Markup.appendEscaped(link, result.rewrittenUrl());
+        Markup.appendEscaped(link, result.queryString());
+        // The fragment is already escaped in the markup
+        link.append(value, queryEnd, valueLength - queryEnd);
+        out.append(link);
+    }
+
+    /**
+     * @return The index of the view-id within the buffered value, or -1 if the value is not an absolute path
+     * within the context path.
+     */
+    private int getPathStart() {
+        final int contextPathLength = contextPath.length();
+        if (valueLength <= contextPathLength || value[contextPathLength] != '/') {
+            return -1;
+        }
+        for (int i = 0; i < contextPathLength; i++) {
+            if (value[i] != contextPath.charAt(i)) {
+                return -1;
+            }
+        }
+        return contextPathLength;
+    }
+
+    private int indexOf(final int from, final char first, final char second) {
+        for (int i = from; i < valueLength; i++) {
+            if (value[i] == first || value[i] == second) {
+                return i;
+            }
+        }
+        return valueLength;
+    }
+
+    /**
+     * Write any partially scanned attribute value unchanged, and flush.
+     */
+    void finish() throws IOException {
+        if (state == State.VALUE) {
+            out.write(value, 0, valueLength);
+        }
+        reset();
+        out.flush();
+    }
+
+    /**
+     * Discard any scanner state, for when the response buffer is reset.
+     */
+    void reset() {
+        state = State.TEXT;
+        valueLength = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (state == State.VALUE) {
+            out.write(value, 0, valueLength);
+        }
+        reset();
+        out.close();
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.markwinton.pathfaces;
+
+/**
+ * Helpers for writing text into HTML and XML markup.
+ */
+final class Markup {
+
+    private Markup() {
+    }
+
+    /**
+     * Append the given value to the target, escaping characters which are not safe in element content or
+     * attribute values.
+     */
+    static void appendEscaped(final StringBuilder target, final CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '&' -> target.append("&amp;");
+                case '<' -> target.append("&lt;");
+                case '>' -> target.append("&gt;");
+                case '"' -> target.append("&quot;");
+                case '\'' -> target.append("&apos;");
+                default -> target.append(c);
+            }
+        }
+    }
+}
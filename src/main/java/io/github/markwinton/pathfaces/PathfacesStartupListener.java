@@ -0,0 +1,18 @@
+package io.github.markwinton.pathfaces;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+
+/**
+ * <p>Loads the Pathfaces configuration as the application starts, via {@link RewrittenURLs#initialize()}, rather than
+ * when the filter or view handler first needs it.</p>
+ * <p>Not registered automatically; add it to <code>web.xml</code>, or call
+ * {@link jakarta.servlet.ServletContext#addListener(Class)} - see the README.md file for details.</p>
+ */
+public class PathfacesStartupListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(final ServletContextEvent sce) {
+        RewrittenURLs.initialize();
+    }
+}
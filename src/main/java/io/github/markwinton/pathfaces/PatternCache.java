@@ -0,0 +1,142 @@
+package io.github.markwinton.pathfaces;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * <p>Bounds how many compiled rule patterns stay resident, for configurations with very large numbers of
+ * placeholder rules.</p>
+ * <p>Each rule holds a {@link LazyPattern}, which compiles its regex on first use. Once the cache is full, compiling
+ * another pattern evicts a resident one using the clock (second chance) approximation of least recently used:
+ * patterns used since the eviction sweep last passed them are kept. Reading a resident pattern takes no lock.</p>
+ * <p>Rules with the same regex share one {@link LazyPattern}. The {@link #SHARED} cache holds the patterns of
+ * {@link RewriteRule#rewrite(String)}, the interpreted matcher and compiled matchers of the default size.</p>
+ */
+final class PatternCache {
+
+    static final int DEFAULT_CAPACITY = 1024;
+    static final PatternCache SHARED = new PatternCache(DEFAULT_CAPACITY);
+
+    private final int capacity;
+    private final Map<String, LazyPattern> lazyPatterns = new ConcurrentHashMap<>();
+    private final Queue<LazyPattern> resident = new ArrayDeque<>();
+    // A lock rather than synchronized, so virtual threads are not pinned while compiling
+    private final ReentrantLock lock = new ReentrantLock();
+
+    PatternCache(final int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * @param regex The regex to compile on demand.
+     * @return The cache's lazy pattern for the regex, created on first request.
+     */
+    LazyPattern lazyPattern(final String regex) {
+        return lazyPatterns.computeIfAbsent(regex, key -> new LazyPattern(this, key));
+    }
+
+    /**
+     * @param capacity The maximum number of compiled patterns to keep resident.
+     * @return The shared cache for the default capacity, otherwise a new cache.
+     */
+    static PatternCache of(final int capacity) {
+        return capacity == DEFAULT_CAPACITY ? SHARED : new PatternCache(capacity);
+    }
+
+    /**
+     * Compile the given patterns now, in order, until the cache is full, so the first requests to use them find
+     * them resident. A pattern which does not compile is skipped, and fails when first used instead.
+     */
+    void preload(final List<LazyPattern> lazyPatterns) {
+        for (final LazyPattern lazyPattern : lazyPatterns) {
+            if (isFull()) {
+                return;
+            }
+            try {
+                lazyPattern.get();
+            }
+            catch (PatternSyntaxException e) {
+                // Reported on first use, as it would have been without preloading
+            }
+        }
+    }
+
+    boolean isFull() {
+        return residentCount() >= capacity;
+    }
+
+    int residentCount() {
+        lock.lock();
+        try {
+            return resident.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private Pattern load(final LazyPattern lazyPattern) {
+        lock.lock();
+        try {
+            final Pattern loaded = lazyPattern.pattern;
+            if (loaded != null) {
+                return loaded;
+            }
+            final Pattern pattern = Pattern.compile(lazyPattern.regex);
+            while (resident.size() >= capacity) {
+                final LazyPattern candidate = resident.remove();
+                if (candidate.referenced) {
+                    candidate.referenced = false;
+                    resident.add(candidate);
+                }
+                else {
+                    candidate.pattern = null;
+                }
+            }
+            lazyPattern.pattern = pattern;
+            resident.add(lazyPattern);
+            return pattern;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A rule's regex, compiled on demand and possibly evicted again by its {@link PatternCache}.
+     */
+    static final class LazyPattern {
+
+        private final PatternCache cache;
+        private final String regex;
+        private volatile Pattern pattern;
+        private volatile boolean referenced;
+
+        private LazyPattern(final PatternCache cache, final String regex) {
+            this.cache = cache;
+            this.regex = regex;
+        }
+
+        boolean isResident() {
+            return pattern != null;
+        }
+
+        Pattern get() {
+            final Pattern resident = pattern;
+            if (resident == null) {
+                return cache.load(this);
+            }
+            // Only write when needed, to avoid contending on the flag for frequently used patterns
+            if (!referenced) {
+                referenced = true;
+            }
+            return resident;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.markwinton.pathfaces;
+
+import java.util.Set;
+
+/**
+ * <p>Represents a redirect from a legacy or non-canonical URL to the pretty URL of a view.</p>
+ * <p>Requests matching the <code>from</code> pattern - case-insensitively, and with the same placeholder syntax
+ * as a {@link RewriteRule} - are answered with a redirect to the pretty URL the <code>to</code> rule gives for
+ * the request's placeholder values and query parameters, exactly as a link to the view would be rewritten.</p>
+ * <p>Use the static {@link #of(String, String, RewriteRule, int)} method to create a new instance.</p>
+ *
+ * @param id The redirect's id.
+ * @param from The pattern to redirect from; its target path is that of <code>to</code>.
+ * @param to The rule giving the canonical pretty URL.
+ * @param status The HTTP status code to redirect with.
+ */
+public record RedirectRule(
+        String id,
+        RewriteRule from,
+        RewriteRule to,
+        int status
+) {
+
+    public static final int DEFAULT_STATUS = 301;
+    private static final Set<Integer> REDIRECT_STATUSES = Set.of(301, 302, 303, 307, 308);
+
+    /**
+     * @throws IllegalArgumentException If the status is not a redirect status code.
+     */
+    public static RedirectRule of(final String id, final String fromPattern, final RewriteRule to, final int status) {
+        if (!isRedirectStatus(status)) {
+            throw new IllegalArgumentException("Unsupported redirect status %d".formatted(status));
+        }
+        return new RedirectRule(id, RewriteRule.of(id, fromPattern, to.targetPath()), to, status);
+    }
+
+    static boolean isRedirectStatus(final int status) {
+        return REDIRECT_STATUSES.contains(status);
+    }
+}
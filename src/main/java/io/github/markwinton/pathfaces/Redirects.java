@@ -0,0 +1,153 @@
+package io.github.markwinton.pathfaces;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * <p>The {@link RedirectRule}s of a configuration, prepared for answering requests directly from the
+ * {@link RewriteURLFilter}.</p>
+ * <p>Each rule's pattern is compiled up front, and where neither pattern has placeholders the whole redirect is
+ * precomputed, so only requests with placeholder values or query parameters build a location. Ignored paths are
+ * never redirected, and a request already at its canonical path is not redirected, so a rule may safely share the
+ * pattern of its target to canonicalize the case of request paths. Placeholder values are compared decoded, and
+ * re-encoded the way links are, so following a redirect never leads to another.</p>
+ */
+final class Redirects {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Redirects.class);
+    private final List<IgnoredPath> ignoredPaths;
+    private final PreparedRedirect[] redirects;
+    private final String contextPath;
+
+    private Redirects(final List<IgnoredPath> ignoredPaths, final PreparedRedirect[] redirects, final String contextPath) {
+        this.ignoredPaths = ignoredPaths;
+        this.redirects = redirects;
+        this.contextPath = contextPath;
+    }
+
+    /**
+     * @param rewriteConfig The configuration holding the redirect rules.
+     * @param contextPath The context path to prefix each location with.
+     * @return Never null.
+     */
+    static Redirects of(final RewriteConfig rewriteConfig, final String contextPath) {
+        final List<PreparedRedirect> redirects = new ArrayList<>();
+        for (final RedirectRule rule : rewriteConfig.redirectRules()) {
+            try {
+                redirects.add(PreparedRedirect.of(rule, contextPath));
+            }
+            catch (PatternSyntaxException e) {
+                LOG.warn("Invalid pattern for redirect {}, ignoring: {}", rule.id(), e.getMessage());
+            }
+        }
+        return new Redirects(List.copyOf(rewriteConfig.ignoredPaths()), redirects.toArray(PreparedRedirect[]::new),
+                contextPath);
+    }
+
+    boolean isEmpty() {
+        return redirects.length == 0;
+    }
+
+    /**
+     * <p>Only <code>GET</code> and <code>HEAD</code> requests are redirected: browsers re-issue most redirected
+     * requests as a <code>GET</code>, which would lose the body of, say, a JSF form postback. A request which has
+     * no value for one of the target's placeholders is not redirected either, as the target would not match.</p>
+     * @param method The request's HTTP method.
+     * @param requestUrlWithoutParam The request path, without context path or query string.
+     * @param queryString The request's query string without the leading <code>?</code>; may be null.
+     * @return The redirect to send, or null if the request should not be redirected.
+     */
+    Redirect getRedirect(final String method, final String requestUrlWithoutParam, final String queryString) {
+        if (redirects.length == 0
+                || !("GET".equals(method) || "HEAD".equals(method))
+                || ignoredPaths.stream().anyMatch(ignoredPath -> ignoredPath.matches(requestUrlWithoutParam))) {
+            return null;
+        }
+        for (final PreparedRedirect redirect : redirects) {
+            final Matcher urlMatcher = redirect.pattern().matcher(requestUrlWithoutParam);
+            if (!urlMatcher.matches()) {
+                continue;
+            }
+            final boolean hasQuery = queryString != null && !queryString.isEmpty();
+            if (redirect.staticRedirect() != null && !hasQuery) {
+                if (redirect.staticPath().equals(requestUrlWithoutParam)) {
+                    return null;
+                }
+                return redirect.staticRedirect();
+            }
+            final Map<String, List<String>> parameters;
+            try {
+                parameters = getParameters(redirect.rule().from(), urlMatcher, hasQuery ? queryString : "");
+            }
+            catch (IllegalArgumentException e) {
+                // Malformed percent-encoding; leave the request to be handled as usual
+                return null;
+            }
+            if (!redirect.rule().to().hasPathParams(parameters)) {
+                return null;
+            }
+            final RewriteResult result = redirect.rule().to().insertPathParams(parameters);
+            if (result.rewrittenUrl().equals(requestUrlWithoutParam)) {
+                // Already canonical
+                return null;
+            }
+            return new Redirect(redirect.rule().status(), contextPath + result.rewrittenUrl() + result.queryString());
+        }
+        return null;
+    }
+
+    private static Map<String, List<String>> getParameters(
+            final RewriteRule from, final Matcher matchedUrl, final String queryString
+    ) {
+        final Map<String, List<String>> parameters = new LinkedHashMap<>(RewriteResult.parseQuery(queryString));
+        // Placeholder values take precedence over query parameters of the same name
+        from.getPathParams(matchedUrl).forEach((name, value) -> parameters.put(name, List.of(decodePathSegment(value))));
+        return parameters;
+    }
+
+    private static String decodePathSegment(final String value) {
+        // Decoded as the view would see it: placeholder values are passed on to the view in a query string, where
+        // '+' is a space
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param status The HTTP status code.
+     * @param location The value for the <code>Location</code> header, including the context path.
+     */
+    record Redirect(int status, String location) {
+    }
+
+    /**
+     * @param staticPath Where both patterns are free of placeholders, the target path without context path;
+     *                   otherwise null.
+     * @param staticRedirect Where both patterns are free of placeholders, the redirect for requests without a
+     *                       query string; otherwise null.
+     */
+    private record PreparedRedirect(
+            RedirectRule rule,
+            Pattern pattern,
+            String staticPath,
+            Redirect staticRedirect
+    ) {
+        static PreparedRedirect of(final RedirectRule rule, final String contextPath) {
+            final Pattern pattern = Pattern.compile(rule.from().urlPatternRegex(),
+                    Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            if (rule.from().hasPlaceholders() || rule.to().hasPlaceholders()) {
+                return new PreparedRedirect(rule, pattern, null, null);
+            }
+            final String staticPath = rule.to().insertPathParams(null).rewrittenUrl();
+            return new PreparedRedirect(rule, pattern, staticPath, new Redirect(rule.status(), contextPath + staticPath));
+        }
+    }
+}
@@ -1,4 +1,17 @@
 package io.github.markwinton.pathfaces;
 
 record RequestDetails(String requestUrlWithoutParam, String requestParams) {
+
+    /**
+     * Append the request's query string, including its leading <code>?</code>, to the URL the request was rewritten
+     * to, which may already have a query string of its own - as a vanity path's view-id may.
+     */
+    static String withRequestParams(final String rewrittenUrl, final String requestParams) {
+        if (rewrittenUrl.indexOf('?') < 0) {
+            return rewrittenUrl + requestParams;
+        }
+        return requestParams.length() > 1
+                ? rewrittenUrl + '&' + requestParams.substring(1)
+                : rewrittenUrl;
+    }
 }
@@ -2,10 +2,29 @@ package io.github.markwinton.pathfaces;
 
 import java.util.List;
 
+/**
+ * @param rewriteRules Rules in declaration order.
+ * @param ignoredPaths Paths excluded from rewriting.
+ * @param vanityPaths Exact-path rules supplied by a {@link RuleSource}.
+ * @param redirectRules Redirects in declaration order.
+ */
 public record RewriteConfig(
         List<RewriteRule> rewriteRules,
-        List<IgnoredPath> ignoredPaths
+        List<IgnoredPath> ignoredPaths,
+        VanityPaths vanityPaths,
+        List<RedirectRule> redirectRules
 ) {
+
+    public RewriteConfig(final List<RewriteRule> rewriteRules, final List<IgnoredPath> ignoredPaths) {
+        this(rewriteRules, ignoredPaths, VanityPaths.empty());
+    }
+
+    public RewriteConfig(
+            final List<RewriteRule> rewriteRules, final List<IgnoredPath> ignoredPaths, final VanityPaths vanityPaths
+    ) {
+        this(rewriteRules, ignoredPaths, vanityPaths, List.of());
+    }
+
     static RewriteConfig empty() {
         return new RewriteConfig(List.of(), List.of());
     }
@@ -1,10 +1,61 @@
 package io.github.markwinton.pathfaces;
 
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-record RewriteResult(
+/**
+ * The result of inserting parameters into a pretty URL.
+ *
+ * @param rewrittenUrl The rewritten URL, without a query string.
+ * @param parameters Any parameters not consumed by the URL's placeholders.
+ */
+public record RewriteResult(
         String rewrittenUrl,
         Map<String, List<String>> parameters
 ) {
+
+    /**
+     * The remaining parameters as a URL-encoded query string, including the leading <code>?</code>; appended to the
+     * {@link #rewrittenUrl()} this gives the complete URL.
+     * @return Empty if there are no remaining parameters, never null.
+     */
+    public String queryString() {
+        if (parameters == null || parameters.isEmpty()) {
+            return "";
+        }
+        final StringBuilder query = new StringBuilder("?");
+        parameters.forEach((name, values) -> values.forEach(value ->
+                query.append(URLEncoder.encode(name, StandardCharsets.UTF_8))
+                        .append('=')
+                        .append(URLEncoder.encode(value, StandardCharsets.UTF_8))
+                        .append('&')
+        ));
+        // Remove the final trailing '&', or the '?' if there were no values
+        query.setLength(query.length() - 1);
+        return query.toString();
+    }
+
+    /**
+     * Parse a URL-encoded query string, without its leading <code>?</code>, into parameters in query order.
+     * @throws IllegalArgumentException If the query contains malformed percent-encoding.
+     */
+    static Map<String, List<String>> parseQuery(final String query) {
+        final Map<String, List<String>> parameters = new LinkedHashMap<>();
+        for (final String parameter : query.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            final int equalsIndex = parameter.indexOf('=');
+            final String name = equalsIndex < 0 ? parameter : parameter.substring(0, equalsIndex);
+            final String value = equalsIndex < 0 ? "" : parameter.substring(equalsIndex + 1);
+            parameters.computeIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8), k -> new ArrayList<>())
+                    .add(URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
 }
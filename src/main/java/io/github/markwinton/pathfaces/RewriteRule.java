@@ -73,18 +73,57 @@ public record RewriteRule(
     }
 
     public String rewrite(String requestUrl) {
-        // Build a regex to match the request URL
-        final String urlPatternRegex = urlPatternRegex();
-        final Pattern urlPattern = Pattern.compile(urlPatternRegex);
-        final Matcher urlMatcher = urlPattern.matcher(requestUrl);
+        final Matcher urlMatcher = lazyPattern().get().matcher(requestUrl);
         if (!urlMatcher.matches()) {
             return targetPath;
         }
+        return rewrite(urlMatcher);
+    }
+
+    /**
+     * This rule's <code>urlPatternRegex</code>, compiled on first use and kept by {@link PatternCache#SHARED}.
+     */
+    PatternCache.LazyPattern lazyPattern() {
+        return PatternCache.SHARED.lazyPattern(urlPatternRegex);
+    }
+
+    /**
+     * Rewrite using a matcher which has already successfully matched the request URL against
+     * this rule's <code>urlPatternRegex</code>, saving the second match performed by {@link #rewrite(String)}.
+     */
+    String rewrite(final Matcher matchedUrl) {
+        return createRedirectUrlForRequest(getPathParams(matchedUrl));
+    }
+
+    /**
+     * The placeholder values from a matcher which has already successfully matched a request URL against this
+     * rule's <code>urlPatternRegex</code>, keyed by placeholder name in pattern order.
+     */
+    Map<String, String> getPathParams(final Matcher matchedUrl) {
         // Extract placeholders from the pattern
         final Matcher placeholderMatcher = PLACEHOLDER_PATTERN.matcher(prettyUrl);
         // Extract placeholder values from the request URL
-        final Map<String, String> redirectParams = getRedirectUrlParameters(placeholderMatcher, urlMatcher);
-        return createRedirectUrlForRequest(redirectParams);
+        return getRedirectUrlParameters(placeholderMatcher, matchedUrl);
+    }
+
+    boolean hasPlaceholders() {
+        return PLACEHOLDER_PATTERN.matcher(prettyUrl).find();
+    }
+
+    /**
+     * Whether the given parameters have a non-empty value for every placeholder, so that
+     * {@link #insertPathParams(Map)} would give a URL this rule matches.
+     * @param params The parameters; may be null.
+     */
+    boolean hasPathParams(final Map<String, List<String>> params) {
+        final Matcher matcher = PLACEHOLDER_PATTERN.matcher(prettyUrl);
+        while (matcher.find()) {
+            final List<String> values = params == null ? null : params.get(matcher.group(1));
+            if (values == null || values.isEmpty() || values.get(0).isEmpty()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private static Map<String, String> getRedirectUrlParameters(final Matcher placeholderMatcher, final Matcher urlMatcher) {
@@ -113,19 +152,27 @@ public record RewriteRule(
         return rewrittenUrl.toString();
     }
 
-    RewriteResult insertPathParams(Map<String, List<String>> paramsIn) {
+    public RewriteResult insertPathParams(Map<String, List<String>> paramsIn) {
+        return insertPathParams(paramsIn, new StringBuilder());
+    }
+
+    /**
+     * As {@link #insertPathParams(Map)}, but building the URL in the given buffer so that callers rewriting many
+     * URLs can reuse one buffer; the buffer is cleared before use.
+     */
+    RewriteResult insertPathParams(Map<String, List<String>> paramsIn, final StringBuilder result) {
         // params are going to be modified by this method, so we need to copy them
         final Map<String, List<String>> params = new LinkedHashMap<>();
         if (paramsIn != null) {
             params.putAll(paramsIn);
         }
-        final StringBuilder result = new StringBuilder();
+        result.setLength(0);
         final Matcher matcher = PLACEHOLDER_PATTERN.matcher(prettyUrl);
         while (matcher.find()) {
             final String placeholder = matcher.group(1);
             final String replacement = getReplacementValue(params, placeholder);
             params.remove(placeholder);
-            final String encodedPathParam = URLEncoder.encode(replacement, StandardCharsets.UTF_8);
+            final String encodedPathParam = encodePathSegment(replacement);
             final String paramReplacement = Matcher.quoteReplacement(encodedPathParam);
             matcher.appendReplacement(result, paramReplacement);
         }
@@ -134,6 +181,15 @@ public record RewriteRule(
         return new RewriteResult(rewrittenUrl, params);
     }
 
+    /**
+     * Percent-encode a placeholder value for use as part of a path; unlike in a query string, a space is
+     * <code>%20</code> rather than <code>+</code>, which the encoding leaves for a literal <code>+</code>.
+     */
+    static String encodePathSegment(final String value) {
+        // URLEncoder encodes a literal '+' as %2B, so any '+' it produces is a space
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
     private static String getReplacementValue(
             final Map<String, List<String>> params, final String placeholder
     ) {
@@ -1,5 +1,9 @@
 package io.github.markwinton.pathfaces;
 
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.FilterConfig;
@@ -10,24 +14,81 @@ import jakarta.servlet.ServletResponse;
 import jakarta.servlet.annotation.WebFilter;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.regex.Matcher;
 
-@WebFilter(urlPatterns = {"/*"}, asyncSupported = true)
+@WebFilter(urlPatterns = {"/*"}, asyncSupported = true, dispatcherTypes = {DispatcherType.REQUEST, DispatcherType.ASYNC})
 public class RewriteURLFilter implements Filter {
 
+    /**
+     * Filter init parameter; when <code>true</code> the rewrite configuration is compiled into a matcher
+     * generated for it at startup rather than walked on every request.
+     */
+    public static final String COMPILED_MATCHER_PARAM = "compiledMatcher";
+
+    /**
+     * Filter init parameter; when <code>true</code> links to mapped view-ids in HTML responses are rewritten to
+     * their pretty URLs, including links which were not produced by the {@link RewriteViewHandler}.
+     */
+    public static final String REWRITE_LINKS_PARAM = "rewriteLinks";
+
+    /**
+     * Filter init parameter; the maximum number of compiled rule patterns the compiled matcher keeps resident,
+     * defaulting to {@value PatternCache#DEFAULT_CAPACITY}.
+     */
+    public static final String PATTERN_CACHE_SIZE_PARAM = "patternCacheSize";
+
+    /**
+     * <p>Filter init parameter; when <code>true</code> matched requests are handed to the rewritten URL with
+     * {@link AsyncContext#dispatch(String)}, releasing the container thread, rather than with a blocking
+     * {@link RequestDispatcher#include}. Requests which do not support async processing are still included.</p>
+     * <p>The dispatched request is passed straight down the chain when it re-enters the filter on the
+     * {@link DispatcherType#ASYNC} dispatcher type, without being matched again. The filter must be mapped for
+     * that dispatcher type for any rewritten links to be completed; see the README.md file for details.</p>
+     */
+    public static final String ASYNC_DISPATCH_PARAM = "asyncDispatch";
+
     private static final Logger LOG = LoggerFactory.getLogger(RewriteURLFilter.class);
     private RewriteConfig rewriteConfig;
+    private RouteMatcher routeMatcher;
+    private ViewIndex viewIndex;
+    private boolean asyncDispatch;
+    private Redirects redirects;
 
     @Override
     public void init(FilterConfig filterConfig) {
-        rewriteConfig = RewrittenURLs.getRewriteConfig();
-        if (rewriteConfig != null && !rewriteConfig.rewriteRules().isEmpty()) {
+        init(RewrittenURLs.getRewriteConfig(), filterConfig);
+    }
+
+    /**
+     * As {@link #init(FilterConfig)}, with the given configuration rather than the one loaded by
+     * {@link RewrittenURLs}.
+     */
+    void init(final RewriteConfig rewriteConfig, final FilterConfig filterConfig) {
+        this.rewriteConfig = rewriteConfig;
+        routeMatcher = Boolean.parseBoolean(filterConfig.getInitParameter(COMPILED_MATCHER_PARAM))
+                ? CompiledRouteMatcher.of(rewriteConfig, getPatternCacheSize(filterConfig))
+                : RouteMatcher.interpreted(rewriteConfig);
+        if (Boolean.parseBoolean(filterConfig.getInitParameter(REWRITE_LINKS_PARAM))) {
+            viewIndex = ViewIndex.of(rewriteConfig);
+        }
+        asyncDispatch = Boolean.parseBoolean(filterConfig.getInitParameter(ASYNC_DISPATCH_PARAM));
+        final Redirects configuredRedirects
+                = Redirects.of(rewriteConfig, filterConfig.getServletContext().getContextPath());
+        redirects = configuredRedirects.isEmpty() ? null : configuredRedirects;
+        if (rewriteConfig != null
+                && !(rewriteConfig.rewriteRules().isEmpty() && rewriteConfig.vanityPaths().isEmpty())) {
             LOG.info("Pathfaces configuration detected:");
             rewriteConfig.rewriteRules().forEach(rule -> LOG.info(rule.toString()));
+            if (!rewriteConfig.vanityPaths().isEmpty()) {
+                LOG.info("{} vanity paths", rewriteConfig.vanityPaths().size());
+            }
+            rewriteConfig.redirectRules().forEach(rule -> LOG.info(rule.toString()));
 
             final List<IgnoredPath> ignoredPaths = rewriteConfig.ignoredPaths();
             if (!ignoredPaths.isEmpty()) {
@@ -42,19 +103,110 @@ public class RewriteURLFilter implements Filter {
 
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            // Only REQUEST dispatches are rewritten; the URI of an async dispatch is already the view-id
+            chain.doFilter(request, response);
+            finish(request, response);
+            return;
+        }
         final HttpServletRequestWrapper wrapper = new HttpServletRequestWrapper((HttpServletRequest) request);
         final int contextPathLength = wrapper.getContextPath().length();
         final String originalPath = wrapper.getRequestURI()
                 .substring(contextPathLength);
         final RequestDetails requestDetails = getRequestDetails(originalPath);
-        final String rewriteUrl = getRewrittenUrl(rewriteConfig, requestDetails);
+        if (redirects != null) {
+            final Redirects.Redirect redirect = redirects.getRedirect(
+                    wrapper.getMethod(), requestDetails.requestUrlWithoutParam(), wrapper.getQueryString());
+            if (redirect != null) {
+                sendRedirect((HttpServletResponse) response, redirect);
+                return;
+            }
+        }
+        final String rewriteUrl = routeMatcher.getRewrittenUrl(requestDetails);
+        final ServletResponse filteredResponse = viewIndex != null
+                ? new LinkRewritingResponse((HttpServletResponse) response, viewIndex, wrapper.getContextPath())
+                : response;
         if (rewriteUrl != null && !rewriteUrl.isBlank()) {
+            if (asyncDispatch && request.isAsyncSupported()) {
+                final AsyncContext asyncContext = request.startAsync(request, filteredResponse);
+                asyncContext.dispatch(rewriteUrl);
+                return;
+            }
             final RequestDispatcher dispatcher = wrapper.getRequestDispatcher(rewriteUrl);
             // .include rather than .forward so that URL in the browser does not change
-            dispatcher.include(request, response);
+            dispatcher.include(request, filteredResponse);
+        }
+        else {
+            chain.doFilter(wrapper, filteredResponse);
+        }
+        finish(request, filteredResponse);
+    }
+
+    /**
+     * Answer the request with the redirect directly, without involving a dispatcher or servlet.
+     */
+    private static void sendRedirect(final HttpServletResponse response, final Redirects.Redirect redirect) {
+        response.setStatus(redirect.status());
+        response.setHeader("Location", redirect.location());
+        response.setContentLength(0);
+    }
+
+    /**
+     * Complete any link rewriting once the request has been handled; if a servlet has started async processing, the
+     * response may still be being written from another thread, so not until the request completes.
+     */
+    private static void finish(final ServletRequest request, final ServletResponse response) throws IOException {
+        if (!(response instanceof LinkRewritingResponse linkRewritingResponse)) {
             return;
         }
-        chain.doFilter(wrapper, response);
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(new FinishOnComplete(linkRewritingResponse));
+        }
+        else {
+            linkRewritingResponse.finish();
+        }
+    }
+
+    /**
+     * Finishes a {@link LinkRewritingResponse} when async processing of its request completes.
+     */
+    private record FinishOnComplete(LinkRewritingResponse response) implements AsyncListener {
+
+        @Override
+        public void onComplete(final AsyncEvent event) throws IOException {
+            response.finish();
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) {
+            // Followed by onComplete, once the container has completed the request
+        }
+
+        @Override
+        public void onError(final AsyncEvent event) {
+            // Followed by onComplete, once the container has completed the request
+        }
+
+        @Override
+        public void onStartAsync(final AsyncEvent event) {
+            // Listeners are dropped when async processing is restarted, so re-register
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    private static int getPatternCacheSize(final FilterConfig filterConfig) {
+        final String patternCacheSize = filterConfig.getInitParameter(PATTERN_CACHE_SIZE_PARAM);
+        if (patternCacheSize == null || patternCacheSize.isBlank()) {
+            return PatternCache.DEFAULT_CAPACITY;
+        }
+        try {
+            return Integer.parseInt(patternCacheSize.trim());
+        }
+        catch (NumberFormatException e) {
+            LOG.warn("Invalid {} '{}', using {}", PATTERN_CACHE_SIZE_PARAM, patternCacheSize,
+                    PatternCache.DEFAULT_CAPACITY);
+            return PatternCache.DEFAULT_CAPACITY;
+        }
     }
 
     static RequestDetails getRequestDetails(final String original) {
@@ -78,11 +230,31 @@ public class RewriteURLFilter implements Filter {
         }
 
         final List<RewriteRule> rewriteRules = rewriteConfig.rewriteRules();
-        return getRewrittenUrl(rewriteRules, requestDetails);
+        final String exactMatch = getExactRewrittenUrl(rewriteRules, requestDetails);
+        if (exactMatch != null) {
+            return exactMatch;
+        }
+
+        // Vanity paths are also exact matches, but only checked once the rules have been
+        final String vanityViewId = rewriteConfig.vanityPaths().get(requestUrlWithoutParam);
+        if (vanityViewId != null) {
+            return RequestDetails.withRequestParams(vanityViewId, requestDetails.requestParams());
+        }
+
+        return getPatternRewrittenUrl(rewriteRules, requestDetails);
     }
 
     static String getRewrittenUrl(
             final List<RewriteRule> rewriteRules, final RequestDetails requestDetails
+    ) {
+        final String exactMatch = getExactRewrittenUrl(rewriteRules, requestDetails);
+        return exactMatch != null
+                ? exactMatch
+                : getPatternRewrittenUrl(rewriteRules, requestDetails);
+    }
+
+    private static String getExactRewrittenUrl(
+            final List<RewriteRule> rewriteRules, final RequestDetails requestDetails
     ) {
         final String requestUrlWithoutParam = requestDetails.requestUrlWithoutParam();
         final String requestParams = requestDetails.requestParams();
@@ -94,12 +266,20 @@ public class RewriteURLFilter implements Filter {
                 return getRewrittenUrl(rewriteRule, requestUrlWithoutParam, requestParams);
             }
         }
+        return null;
+    }
+
+    private static String getPatternRewrittenUrl(
+            final List<RewriteRule> rewriteRules, final RequestDetails requestDetails
+    ) {
+        final String requestUrlWithoutParam = requestDetails.requestUrlWithoutParam();
+        final String requestParams = requestDetails.requestParams();
 
         // Now look for Regex matches - first match in the list takes precedence
         for (RewriteRule rewriteRule : rewriteRules) {
-            final String pathRegex = rewriteRule.urlPatternRegex();
-            if (requestUrlWithoutParam.matches(pathRegex)) {
-                return getRewrittenUrl(rewriteRule, requestUrlWithoutParam, requestParams);
+            final Matcher urlMatcher = rewriteRule.lazyPattern().get().matcher(requestUrlWithoutParam);
+            if (urlMatcher.matches()) {
+                return RequestDetails.withRequestParams(rewriteRule.rewrite(urlMatcher), requestParams);
             }
         }
 
@@ -110,7 +290,7 @@ public class RewriteURLFilter implements Filter {
             final RewriteRule rewriteRule,
             final String requestUrlWithoutParam, final String requestParams
     ) {
-        return rewriteRule.rewrite(requestUrlWithoutParam) + requestParams;
+        return RequestDetails.withRequestParams(rewriteRule.rewrite(requestUrlWithoutParam), requestParams);
     }
 
 }
\ No newline at end of file
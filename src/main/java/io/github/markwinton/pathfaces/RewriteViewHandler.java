@@ -5,7 +5,6 @@ import jakarta.faces.application.ViewHandlerWrapper;
 import jakarta.faces.context.ExternalContext;
 import jakarta.faces.context.FacesContext;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -15,16 +14,12 @@ import java.util.Map;
  */
 public class RewriteViewHandler extends ViewHandlerWrapper {
 
-    private static final List<RewriteRule> REWRITE_RULES = new ArrayList<>();
-    private static final List<IgnoredPath> IGNORED_PATHS = new ArrayList<>();
+    private final ViewIndex viewIndex;
 
     public RewriteViewHandler(final ViewHandler wrapped) {
         super(wrapped);
         final RewriteConfig rewriteConfig = RewrittenURLs.getRewriteConfig();
-        if (rewriteConfig != null) {
-            REWRITE_RULES.addAll(rewriteConfig.rewriteRules());
-            IGNORED_PATHS.addAll(rewriteConfig.ignoredPaths());
-        }
+        viewIndex = ViewIndex.of(rewriteConfig != null ? rewriteConfig : RewriteConfig.empty());
     }
 
     /**
@@ -47,27 +42,20 @@ public class RewriteViewHandler extends ViewHandlerWrapper {
         return externalContext.encodeActionURL(bookmarkEncodedURL);
     }
 
-    private static RewriteResult getRewrittenUrl(
+    private RewriteResult getRewrittenUrl(
             final String contextPath, final String actionURL,
             final Map<String, List<String>> params
     ) {
         final ActionDetails actionDetails = getActionDetails(actionURL);
         final String action = actionDetails.baseUrl()
                 .substring(contextPath.length());
-        final RewriteResult defaultAction = new RewriteResult(actionURL, params);
 
-        // Check if the action is ignored, if not then look for a rewrite rule
-        final boolean isIgnoredPath = IGNORED_PATHS.stream()
-                .anyMatch(ip -> ip.matches(action));
-        if (isIgnoredPath) {
-            return defaultAction;
+        // Ignored actions have no rule; otherwise use the rule targeting the action, if any
+        final RewriteRule rule = viewIndex.getRule(action);
+        if (rule == null) {
+            return new RewriteResult(actionURL, params);
         }
-
-        return REWRITE_RULES.stream()
-                .filter(rule -> rule.targetPath().equals(action))
-                .findFirst()
-                .map(rule -> rule.insertPathParams(params))
-                .orElse(defaultAction);
+        return rule.insertPathParams(params);
     }
 
     private static ActionDetails getActionDetails(final String actionURL) {
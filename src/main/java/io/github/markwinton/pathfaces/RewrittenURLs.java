@@ -13,44 +13,330 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.IntStream;
 
 /**
- * Singleton class to load and manage URL rewrite rules from an XML configuration file.
+ * <p>Singleton class to load and manage URL rewrite rules from the <code>META-INF/rewrite-url.xml</code> files on the
+ * class path, and any {@link RuleSource}s.</p>
+ * <p>The configuration is loaded on first use, or eagerly with {@link #initialize()}. Once loaded it is immutable
+ * and holds no threads, files or other operating system resources, so a CRaC checkpoint taken after loading needs
+ * no special handling. It lives on the heap, so it is not kept in an AppCDS archive, which holds classes, and is
+ * loaded at run time in a native image, as nothing is initialized at build time.</p>
  */
 public final class RewrittenURLs {
 
     private static final Logger LOG = LoggerFactory.getLogger(RewrittenURLs.class);
-    private static RewriteConfig rewriteConfig;
+    private static final String REWRITE_CONFIG_FILE = "META-INF/rewrite-url.xml";
+    /**
+     * The application's own classes first, then JARs by file name, then by URL, so that the merge order does not
+     * depend on the container.
+     */
+    static final Comparator<URL> CONFIG_FILE_ORDER = Comparator.comparing(RewrittenURLs::jarName)
+            .thenComparing(URL::toString);
+    // A lock rather than synchronized, so a virtual thread loading the configuration is not pinned during I/O
+    private static final ReentrantLock LOAD_LOCK = new ReentrantLock();
+    private static final AtomicInteger PARSER_THREAD_COUNT = new AtomicInteger();
+    private static volatile RewriteConfig rewriteConfig;
 
     private RewrittenURLs() {
     }
 
     public static RewriteConfig getRewriteConfig() {
-        if (rewriteConfig == null) {
-            rewriteConfig = loadRewriteRules();
+        final RewriteConfig loaded = rewriteConfig;
+        return loaded != null ? loaded : loadRewriteRules();
+    }
+
+    /**
+     * <p>Load the configuration now, rather than on first use, taking XML parser lookup, parsing and
+     * {@link RuleSource} calls off the path of the first request, and compile the rule patterns; see
+     * {@link #compilePatterns(RewriteConfig, PatternCache)}.</p>
+     * <p>Call from application startup - see {@link PathfacesStartupListener} - or before taking a CRaC checkpoint.
+     * Calling more than once has no further effect.</p>
+     * @return The loaded configuration; never null.
+     */
+    public static RewriteConfig initialize() {
+        final long start = System.nanoTime();
+        final RewriteConfig loaded = getRewriteConfig();
+        compilePatterns(loaded, PatternCache.SHARED);
+        LOG.info("Pathfaces initialized in {} ms", (System.nanoTime() - start) / 1_000_000);
+        return loaded;
+    }
+
+    /**
+     * Compile the rule patterns in declared order, keeping them in the given cache - {@link PatternCache#SHARED} is
+     * used by the interpreted matcher and compiled matchers of the default size - and log any which do not compile.
+     * Stops once the cache is full, leaving the remaining patterns to be compiled and checked on first use.
+     */
+    static void compilePatterns(final RewriteConfig loaded, final PatternCache patternCache) {
+        for (final RewriteRule rule : loaded.rewriteRules()) {
+            if (patternCache.isFull()) {
+                return;
+            }
+            try {
+                patternCache.lazyPattern(rule.urlPatternRegex()).get();
+            }
+            catch (PatternSyntaxException e) {
+                LOG.error("Pathfaces url-mapping {} has an invalid pattern: {}", rule.id(), e.getMessage());
+            }
         }
-        return rewriteConfig;
     }
 
-    private static synchronized RewriteConfig loadRewriteRules() {
-        if (rewriteConfig != null) {
+    private static RewriteConfig loadRewriteRules() {
+        LOAD_LOCK.lock();
+        try {
+            if (rewriteConfig == null) {
+                final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+                rewriteConfig = withRuleSources(
+                        loadXmlRewriteRules(classLoader), ServiceLoader.load(RuleSource.class, classLoader));
+            }
             return rewriteConfig;
         }
+        finally {
+            LOAD_LOCK.unlock();
+        }
+    }
+
+    /**
+     * <p>Load and merge every <code>META-INF/rewrite-url.xml</code> visible to the given class loader, parsing the
+     * files concurrently; see {@link #mergeFragments(List)} for how they are combined.</p>
+     * <p>Containers list class path resources in different orders, so the files are merged in
+     * {@link #CONFIG_FILE_ORDER} rather than the order the class loader finds them.</p>
+     * <p>The XML parser is looked up on the calling thread, so the same JAXP implementation is used however many
+     * files there are, and the files are parsed on threads of their own rather than the shared common pool.</p>
+     */
+    static RewriteConfig loadXmlRewriteRules(final ClassLoader classLoader) {
+        final List<URL> configFiles;
         try {
-            final Document loadedXmlConfig = loadRewriteConfigFile();
+            configFiles = findRewriteConfigFiles(classLoader);
+        }
+        catch (IOException e) {
+            LOG.error("Pathfaces configuration error: %s".formatted(e.getMessage()), e);
+            return RewriteConfig.empty();
+        }
+        if (configFiles.isEmpty()) {
+            LOG.error("Pathfaces configuration error: Unable to load rewrite-url.xml");
+            return RewriteConfig.empty();
+        }
+        // A builder per file, as builders are not thread-safe
+        final List<DocumentBuilder> documentBuilders = new ArrayList<>();
+        try {
+            final DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+            for (int i = 0; i < configFiles.size(); i++) {
+                documentBuilders.add(dbFactory.newDocumentBuilder());
+            }
+        }
+        catch (ParserConfigurationException e) {
+            LOG.error("Pathfaces configuration error: %s".formatted(e.getMessage()), e);
+            return RewriteConfig.empty();
+        }
+        if (configFiles.size() == 1) {
+            return mergeFragments(List.of(parseFragment(configFiles.get(0), documentBuilders.get(0))));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(configFiles.size(), Runtime.getRuntime().availableProcessors()), parserThreads(classLoader));
+        try {
+            final List<CompletableFuture<ConfigFragment>> parsing = IntStream.range(0, configFiles.size())
+                    .mapToObj(i -> CompletableFuture.supplyAsync(
+                            () -> parseFragment(configFiles.get(i), documentBuilders.get(i)), executor))
+                    .toList();
+            // Joined in sorted order, so the result does not depend on which file finished parsing first
+            final List<ConfigFragment> fragments = parsing.stream()
+                    .map(CompletableFuture::join)
+                    .toList();
+            return mergeFragments(fragments);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Daemon threads with the application's class loader as their context class loader, as the loading thread has.
+     */
+    private static ThreadFactory parserThreads(final ClassLoader classLoader) {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "pathfaces-config-" + PARSER_THREAD_COUNT.incrementAndGet());
+            thread.setContextClassLoader(classLoader);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static List<URL> findRewriteConfigFiles(final ClassLoader classLoader) throws IOException {
+        // Some containers also resolve the path with a leading '/', as used by earlier versions
+        final Set<URL> configFiles = new LinkedHashSet<>();
+        for (final String name : List.of(REWRITE_CONFIG_FILE, "/" + REWRITE_CONFIG_FILE)) {
+            configFiles.addAll(Collections.list(classLoader.getResources(name)));
+        }
+        return configFiles.stream()
+                .sorted(CONFIG_FILE_ORDER)
+                .toList();
+    }
+
+    /**
+     * The JAR file name of a resource URL, such as <code>module.jar</code> for
+     * <code>jar:file:/app/WEB-INF/lib/module.jar!/META-INF/rewrite-url.xml</code>, or an empty string for a
+     * resource which is not in a JAR, such as one in the application's own classes.
+     */
+    static String jarName(final URL resource) {
+        final String url = resource.toString();
+        final int separator = url.lastIndexOf("!/");
+        if (separator < 0) {
+            return "";
+        }
+        final String archive = url.substring(url.lastIndexOf('/', separator - 1) + 1, separator);
+        return archive.toLowerCase(Locale.ROOT).endsWith(".jar") ? archive : "";
+    }
+
+    /**
+     * Parse a single <code>rewrite-url.xml</code>; a file which cannot be parsed is logged and treated as empty.
+     */
+    static ConfigFragment parseFragment(final URL configFile, final DocumentBuilder dBuilder) {
+        final String source = configFile.toString();
+        try (InputStream input = configFile.openStream()) {
+            final Document loadedXmlConfig = dBuilder.parse(input);
             final List<RewriteRule> rewriteRules
                     = parseRewriteRules(loadedXmlConfig, "url-mapping", n -> getRewriteRules((Element) n));
             final List<IgnoredPath> ignoredPaths
                     = parseRewriteRules(loadedXmlConfig, "ignored-path", n -> getIgnoredPaths((Element) n));
-            return new RewriteConfig(rewriteRules, ignoredPaths);
+            final List<RedirectMapping> redirectMappings
+                    = parseRewriteRules(loadedXmlConfig, "redirect", n -> getRedirectMappings((Element) n));
+            return new ConfigFragment(source, rewriteRules, ignoredPaths, redirectMappings);
         }
-        catch (ParserConfigurationException | IOException | SAXException e) {
-            LOG.error("Pathfaces configuration error: %s".formatted(e.getMessage()), e);
+        catch (IOException | SAXException e) {
+            LOG.error("Pathfaces configuration error in %s: %s".formatted(source, e.getMessage()), e);
+        }
+        return new ConfigFragment(source, List.of(), List.of(), List.of());
+    }
+
+    /**
+     * <p>Merge the parsed configuration files, in the order given, into a single configuration.</p>
+     * <p>A <code>url-mapping</code> whose id has already been declared is logged and dropped. Several mappings
+     * may target the same view-id, but as only the first is used for links to that view, this is logged too when
+     * the mappings are in different files.</p>
+     * <p>Redirects are resolved against the merged mappings, so may redirect to a view mapped in another file.</p>
+     */
+    static RewriteConfig mergeFragments(final List<ConfigFragment> fragments) {
+        final Map<String, String> idSources = new HashMap<>();
+        final Map<String, String> targetPathSources = new HashMap<>();
+        final List<RewriteRule> rewriteRules = new ArrayList<>();
+        final List<IgnoredPath> ignoredPaths = new ArrayList<>();
+        for (final ConfigFragment fragment : fragments) {
+            for (final RewriteRule rule : fragment.rewriteRules()) {
+                final String id = rule.id();
+                final String source = fragment.source();
+                if (!id.isBlank() && idSources.putIfAbsent(id, source) != null) {
+                    LOG.warn("Duplicate url-mapping id {} in {}, already declared in {}; ignoring {}",
+                            id, source, idSources.get(id), rule);
+                    continue;
+                }
+                final String targetSource = targetPathSources.putIfAbsent(rule.targetPath(), source);
+                // Mapping several patterns to one view within a file is deliberate
+                if (targetSource != null && !targetSource.equals(source)) {
+                    LOG.warn("url-mapping {} in {} targets view-id {}, already targeted in {}; "
+                            + "links to the view will use the first mapping", id, source, rule.targetPath(),
+                            targetSource);
+                }
+                rewriteRules.add(rule);
+            }
+            ignoredPaths.addAll(fragment.ignoredPaths());
+        }
+        final RewriteConfig mappings = new RewriteConfig(List.copyOf(rewriteRules), List.copyOf(ignoredPaths));
+        final ViewIndex viewIndex = ViewIndex.of(mappings);
+        final List<RedirectRule> redirectRules = fragments.stream()
+                .flatMap(fragment -> fragment.redirectMappings().stream()
+                        .map(mapping -> getRedirectRule(viewIndex, fragment.source(), mapping)))
+                .filter(Objects::nonNull)
+                .toList();
+        return new RewriteConfig(mappings.rewriteRules(), mappings.ignoredPaths(), VanityPaths.empty(), redirectRules);
+    }
+
+    private static RedirectRule getRedirectRule(
+            final ViewIndex viewIndex, final String source, final RedirectMapping mapping
+    ) {
+        final RewriteRule to = viewIndex.getRule(mapping.viewId());
+        if (to == null) {
+            LOG.warn("Redirect {} in {} is to view-id {}, which has no url-mapping or is ignored; ignoring",
+                    mapping.id(), source, mapping.viewId());
+            return null;
+        }
+        final int status = getRedirectStatus(source, mapping);
+        LOG.debug("Adding redirect, id {}, pattern {} -> view-id {}, status {}",
+                mapping.id(), mapping.pattern(), mapping.viewId(), status);
+        return RedirectRule.of(mapping.id(), mapping.pattern(), to, status);
+    }
+
+    private static int getRedirectStatus(final String source, final RedirectMapping mapping) {
+        if (mapping.status().isBlank()) {
+            return RedirectRule.DEFAULT_STATUS;
         }
-        return RewriteConfig.empty();
+        try {
+            final int status = Integer.parseInt(mapping.status().trim());
+            if (RedirectRule.isRedirectStatus(status)) {
+                return status;
+            }
+        }
+        catch (NumberFormatException e) {
+            // Logged below
+        }
+        LOG.warn("Redirect {} in {} has invalid status {}, using {}",
+                mapping.id(), source, mapping.status(), RedirectRule.DEFAULT_STATUS);
+        return RedirectRule.DEFAULT_STATUS;
+    }
+
+    /**
+     * Add the rules from each {@link RuleSource} to the given configuration; a source which fails to load is
+     * logged and skipped.
+     */
+    static RewriteConfig withRuleSources(final RewriteConfig rewriteConfig, final Iterable<RuleSource> ruleSources) {
+        final List<RewriteRule> rewriteRules = new ArrayList<>(rewriteConfig.rewriteRules());
+        final List<IgnoredPath> ignoredPaths = new ArrayList<>(rewriteConfig.ignoredPaths());
+        final VanityPaths.Builder vanityPaths = VanityPaths.builder();
+        try {
+            for (final RuleSource ruleSource : ruleSources) {
+                try {
+                    final List<RewriteRule> sourceRules = ruleSource.rewriteRules();
+                    final List<IgnoredPath> sourceIgnoredPaths = ruleSource.ignoredPaths();
+                    // Collected separately, so nothing from a source which fails part way through is kept
+                    final VanityPaths.Builder sourceVanityPaths = VanityPaths.builder();
+                    ruleSource.vanityPaths(sourceVanityPaths::add);
+                    rewriteRules.addAll(sourceRules);
+                    ignoredPaths.addAll(sourceIgnoredPaths);
+                    vanityPaths.addAll(sourceVanityPaths.build());
+                    LOG.debug("Loaded Pathfaces rule source {}", ruleSource.getClass().getName());
+                }
+                catch (RuntimeException e) {
+                    LOG.error("Pathfaces rule source %s failed: %s"
+                            .formatted(ruleSource.getClass().getName(), e.getMessage()), e);
+                }
+            }
+        }
+        catch (ServiceConfigurationError e) {
+            LOG.error("Pathfaces rule source configuration error: %s".formatted(e.getMessage()), e);
+        }
+        return new RewriteConfig(List.copyOf(rewriteRules), List.copyOf(ignoredPaths), vanityPaths.build(),
+                rewriteConfig.redirectRules());
     }
 
     private static <T> List<T> parseRewriteRules(
@@ -62,6 +348,8 @@ public final class RewrittenURLs {
                 .map(nodeList::item)
                 .filter(n -> n.getNodeType() == Node.ELEMENT_NODE)
                 .map(elementParser)
+                // Incomplete entries are parsed as null
+                .filter(Objects::nonNull)
                 .toList();
     }
 
@@ -78,6 +366,17 @@ public final class RewrittenURLs {
         return null;
     }
 
+    private static RedirectMapping getRedirectMappings(final Element node) {
+        final String id = node.getAttribute("id");
+        final String pattern = getElementValue(node, "pattern");
+        final String viewId = getElementValue(node, "view-id");
+        final String status = getElementValue(node, "status");
+        if (!pattern.isBlank() && !viewId.isBlank()) {
+            return new RedirectMapping(id, pattern, viewId, status);
+        }
+        return null;
+    }
+
     private static IgnoredPath getIgnoredPaths(final Element node) {
         final String id = node.getAttribute("id");
         final String path = getElementValue(node, "path");
@@ -110,16 +409,28 @@ public final class RewrittenURLs {
         return "";
     }
 
-    private static Document loadRewriteConfigFile()
-            throws ParserConfigurationException, SAXException, IOException {
-        final InputStream input = Thread.currentThread().getContextClassLoader()
-                .getResourceAsStream("/META-INF/rewrite-url.xml");
-        if (input == null) {
-            throw new IOException("Unable to load rewrite-url.xml");
-        }
-        final DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        final DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        return dBuilder.parse(input);
+    /**
+     * The rules parsed from one <code>rewrite-url.xml</code>.
+     *
+     * @param source The location of the file.
+     */
+    record ConfigFragment(
+            String source,
+            List<RewriteRule> rewriteRules,
+            List<IgnoredPath> ignoredPaths,
+            List<RedirectMapping> redirectMappings
+    ) {
+    }
+
+    /**
+     * A <code>redirect</code> as declared, before its view-id has been resolved to a mapping.
+     */
+    record RedirectMapping(
+            String id,
+            String pattern,
+            String viewId,
+            String status
+    ) {
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package io.github.markwinton.pathfaces;
+
+/**
+ * <p>Resolves an inbound request to the JSF view it should be rewritten to.</p>
+ * <p>Implementations must return the same result as
+ * {@link RewriteURLFilter#getRewrittenUrl(RewriteConfig, RequestDetails)} for the same configuration.</p>
+ */
+interface RouteMatcher {
+
+    /**
+     * @param requestDetails The request path (without context path) and query string; cannot be null.
+     * @return The rewritten URL, or null if the request is ignored or matches no rule.
+     */
+    String getRewrittenUrl(RequestDetails requestDetails);
+
+    /**
+     * Matcher which walks the {@link RewriteConfig} on each request.
+     */
+    static RouteMatcher interpreted(final RewriteConfig rewriteConfig) {
+        return requestDetails -> RewriteURLFilter.getRewrittenUrl(rewriteConfig, requestDetails);
+    }
+}
@@ -0,0 +1,536 @@
+package io.github.markwinton.pathfaces;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Writes the class file of a hidden class {@link CompiledRouteMatcher} defines for a configuration: the constant
+ * pool, static fields, and methods whose bytecode is assembled with {@link Code}.</p>
+ * <p>Generated methods never store to a local variable, so at every branch target the locals are just the method's
+ * parameters and the stack holds either nothing or a single string. Each {@link Label} knows which, which is all
+ * that is needed to write the method's stack map frames.</p>
+ */
+final class RouteMatcherClassFile {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ALOAD_0 = 0x2a;
+    static final int ALOAD_1 = 0x2b;
+    static final int AALOAD = 0x32;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int GOTO = 0xa7;
+    static final int TABLESWITCH = 0xaa;
+    static final int LOOKUPSWITCH = 0xab;
+    static final int IRETURN = 0xac;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int PUTSTATIC = 0xb3;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int CHECKCAST = 0xc0;
+    static final int IFNONNULL = 0xc7;
+
+    private static final int JAVA_17 = 61;
+    private static final String STRING = "java/lang/String";
+
+    private final String className;
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private final Map<String, Integer> constantIndexes = new HashMap<>();
+    private final List<int[]> fields = new ArrayList<>();
+    private final List<Code> methods = new ArrayList<>();
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private int constantCount = 1;
+
+    /**
+     * @param className The internal name of the class, such as <code>java/lang/Object</code>.
+     * @param interfaceNames The internal names of the interfaces it implements; it extends <code>Object</code>.
+     */
+    RouteMatcherClassFile(final String className, final String... interfaceNames) {
+        this.className = className;
+        thisClass = classConstant(className);
+        superClass = classConstant("java/lang/Object");
+        interfaces = Arrays.stream(interfaceNames).mapToInt(this::classConstant).toArray();
+    }
+
+    String className() {
+        return className;
+    }
+
+    void field(final int access, final String name, final String descriptor) {
+        fields.add(new int[]{access, utf8Constant(name), utf8Constant(descriptor)});
+    }
+
+    /**
+     * Start a method, whose code is assembled in the returned {@link Code} before {@link #bytes()} is called.
+     * @param maxStack The greatest number of stack slots the code uses.
+     */
+    Code method(final int access, final String name, final String descriptor, final int maxStack) {
+        final Code code = new Code(this, access, name, descriptor, maxStack);
+        methods.add(code);
+        return code;
+    }
+
+    byte[] bytes() {
+        try {
+            return write();
+        }
+        catch (IOException e) {
+            // Only written to memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] write() throws IOException {
+        // Writing the methods adds their attribute names and frame types to the constant pool, so comes first
+        final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+        final DataOutputStream methodOut = new DataOutputStream(methodBytes);
+        for (final Code method : methods) {
+            method.writeTo(methodOut);
+        }
+        constantPool.flush();
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(JAVA_17);
+        out.writeShort(constantCount);
+        constantPoolBytes.writeTo(out);
+        out.writeShort(ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(interfaces.length);
+        for (final int anInterface : interfaces) {
+            out.writeShort(anInterface);
+        }
+        out.writeShort(fields.size());
+        for (final int[] field : fields) {
+            out.writeShort(field[0]);
+            out.writeShort(field[1]);
+            out.writeShort(field[2]);
+            out.writeShort(0);
+        }
+        out.writeShort(methods.size());
+        methodOut.flush();
+        methodBytes.writeTo(out);
+        // No class attributes
+        out.writeShort(0);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    int utf8Constant(final String value) {
+        final Integer existing = constantIndexes.get("Utf8:" + value);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            constantPool.writeByte(1);
+            constantPool.writeUTF(value);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return newConstant("Utf8:" + value);
+    }
+
+    /**
+     * @param internalName An internal class name, or an array descriptor.
+     */
+    int classConstant(final String internalName) {
+        return constant("Class:" + internalName, 7, utf8Constant(internalName));
+    }
+
+    int stringConstant(final String value) {
+        return constant("String:" + value, 8, utf8Constant(value));
+    }
+
+    int integerConstant(final int value) {
+        final Integer existing = constantIndexes.get("Integer:" + value);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            constantPool.writeByte(3);
+            constantPool.writeInt(value);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return newConstant("Integer:" + value);
+    }
+
+    int fieldConstant(final String owner, final String name, final String descriptor) {
+        return constant("Field:" + owner + "." + name + descriptor, 9,
+                classConstant(owner), nameAndTypeConstant(name, descriptor));
+    }
+
+    int methodConstant(final String owner, final String name, final String descriptor) {
+        return constant("Method:" + owner + "." + name + descriptor, 10,
+                classConstant(owner), nameAndTypeConstant(name, descriptor));
+    }
+
+    private int nameAndTypeConstant(final String name, final String descriptor) {
+        return constant("NameAndType:" + name + ":" + descriptor, 12, utf8Constant(name), utf8Constant(descriptor));
+    }
+
+    /**
+     * Add a constant made up of a tag and references to other constants, unless an identical one exists.
+     */
+    private int constant(final String key, final int tag, final int... references) {
+        final Integer existing = constantIndexes.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            constantPool.writeByte(tag);
+            for (final int reference : references) {
+                constantPool.writeShort(reference);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return newConstant(key);
+    }
+
+    private int newConstant(final String key) {
+        final int index = constantCount++;
+        constantIndexes.put(key, index);
+        return index;
+    }
+
+    /**
+     * A position in a method's code that can be jumped to.
+     */
+    static final class Label {
+
+        private final boolean stringOnStack;
+        private final List<int[]> pendingJumps = new ArrayList<>();
+        private int position = -1;
+
+        /**
+         * @param stringOnStack Whether the stack holds a single string when the label is reached; otherwise it is
+         *                      empty.
+         */
+        Label(final boolean stringOnStack) {
+            this.stringOnStack = stringOnStack;
+        }
+    }
+
+    /**
+     * Assembles the bytecode of one method.
+     */
+    static final class Code {
+
+        private final RouteMatcherClassFile classFile;
+        private final int access;
+        private final String name;
+        private final String descriptor;
+        private final int maxStack;
+        private final List<Label> frames = new ArrayList<>();
+        private final List<Label> jumpTargets = new ArrayList<>();
+        private byte[] code = new byte[256];
+        private int length;
+
+        private Code(
+                final RouteMatcherClassFile classFile, final int access, final String name, final String descriptor,
+                final int maxStack
+        ) {
+            this.classFile = classFile;
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxStack = maxStack;
+        }
+
+        int size() {
+            return length;
+        }
+
+        Code op(final int opcode) {
+            writeByte(opcode);
+            return this;
+        }
+
+        /**
+         * An instruction with a two byte operand, such as a constant pool index.
+         */
+        Code op(final int opcode, final int operand) {
+            writeByte(opcode);
+            writeShort(operand);
+            return this;
+        }
+
+        Code loadInt(final int value) {
+            if (value >= -1 && value <= 5) {
+                return op(ICONST_0 + value);
+            }
+            if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                writeByte(BIPUSH);
+                writeByte(value);
+                return this;
+            }
+            if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                return op(SIPUSH, value);
+            }
+            return op(LDC_W, classFile.integerConstant(value));
+        }
+
+        Code getStatic(final String owner, final String fieldName, final String fieldDescriptor) {
+            return op(GETSTATIC, classFile.fieldConstant(owner, fieldName, fieldDescriptor));
+        }
+
+        Code invokeStatic(final String owner, final String methodName, final String methodDescriptor) {
+            return op(INVOKESTATIC, classFile.methodConstant(owner, methodName, methodDescriptor));
+        }
+
+        Code invokeVirtual(final String owner, final String methodName, final String methodDescriptor) {
+            return op(INVOKEVIRTUAL, classFile.methodConstant(owner, methodName, methodDescriptor));
+        }
+
+        /**
+         * A conditional or unconditional jump; the code is kept well within the two byte offset's range.
+         */
+        Code jump(final int opcode, final Label target) {
+            final int instruction = length;
+            writeByte(opcode);
+            writeOffset(instruction, target, false);
+            return this;
+        }
+
+        /**
+         * Switch on the int on the stack, as a <code>tableswitch</code> where the keys are dense enough and
+         * otherwise a <code>lookupswitch</code>, choosing as <code>javac</code> does.
+         * @param keys Distinct keys, in ascending order.
+         */
+        Code switchOn(final int[] keys, final Label[] targets, final Label defaultTarget) {
+            final int instruction = length;
+            final long low = keys.length == 0 ? 0 : keys[0];
+            final long high = keys.length == 0 ? -1 : keys[keys.length - 1];
+            final long tableCost = 4 + (high - low + 1) + 3 * 3;
+            final long lookupCost = 3 + 2L * keys.length + 3L * keys.length;
+            final boolean table = keys.length > 0 && tableCost <= lookupCost;
+            writeByte(table ? TABLESWITCH : LOOKUPSWITCH);
+            while (length % 4 != 0) {
+                writeByte(0);
+            }
+            writeOffset(instruction, defaultTarget, true);
+            if (table) {
+                writeInt((int) low);
+                writeInt((int) high);
+                int key = 0;
+                for (long value = low; value <= high; value++) {
+                    if (keys[key] == value) {
+                        writeOffset(instruction, targets[key++], true);
+                    }
+                    else {
+                        writeOffset(instruction, defaultTarget, true);
+                    }
+                }
+            }
+            else {
+                writeInt(keys.length);
+                for (int i = 0; i < keys.length; i++) {
+                    writeInt(keys[i]);
+                    writeOffset(instruction, targets[i], true);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Fix the label at the current position; the previous instruction must not fall through to it unless the
+         * stack matches the label.
+         */
+        Code bind(final Label label) {
+            if (label.position >= 0) {
+                throw new IllegalStateException("Label already bound");
+            }
+            label.position = length;
+            for (final int[] jump : label.pendingJumps) {
+                final int offset = length - jump[0];
+                if (jump[2] == 4) {
+                    putInt(jump[1], offset);
+                }
+                else {
+                    putShort(jump[1], offset);
+                }
+            }
+            label.pendingJumps.clear();
+            final Label previous = frames.isEmpty() ? null : frames.get(frames.size() - 1);
+            if (previous == null || previous.position != length) {
+                frames.add(label);
+            }
+            else if (previous.stringOnStack != label.stringOnStack) {
+                throw new IllegalStateException("Labels with different stacks at " + length);
+            }
+            return this;
+        }
+
+        private void writeOffset(final int instruction, final Label target, final boolean wide) {
+            if (target.position >= 0) {
+                final int offset = target.position - instruction;
+                if (wide) {
+                    writeInt(offset);
+                }
+                else {
+                    writeShort(offset);
+                }
+                return;
+            }
+            if (target.pendingJumps.isEmpty()) {
+                jumpTargets.add(target);
+            }
+            target.pendingJumps.add(new int[]{instruction, length, wide ? 4 : 2});
+            if (wide) {
+                writeInt(0);
+            }
+            else {
+                writeShort(0);
+            }
+        }
+
+        private void writeByte(final int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = (byte) value;
+        }
+
+        private void writeShort(final int value) {
+            writeByte(value >>> 8);
+            writeByte(value);
+        }
+
+        private void writeInt(final int value) {
+            writeShort(value >>> 16);
+            writeShort(value);
+        }
+
+        private void putShort(final int position, final int value) {
+            if (value != (short) value) {
+                throw new IllegalStateException("Jump offset out of range in " + name);
+            }
+            code[position] = (byte) (value >>> 8);
+            code[position + 1] = (byte) value;
+        }
+
+        private void putInt(final int position, final int value) {
+            code[position] = (byte) (value >>> 24);
+            code[position + 1] = (byte) (value >>> 16);
+            code[position + 2] = (byte) (value >>> 8);
+            code[position + 3] = (byte) value;
+        }
+
+        private int maxLocals() {
+            // Parameters are all references or ints, so take one slot each
+            int maxLocals = (access & ACC_STATIC) != 0 ? 0 : 1;
+            for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+                while (descriptor.charAt(i) == '[') {
+                    i++;
+                }
+                if (descriptor.charAt(i) == 'L') {
+                    i = descriptor.indexOf(';', i);
+                }
+                maxLocals++;
+            }
+            return maxLocals;
+        }
+
+        private void writeTo(final DataOutputStream out) throws IOException {
+            for (final Label target : jumpTargets) {
+                if (target.position < 0) {
+                    throw new IllegalStateException("Unbound label in " + name);
+                }
+            }
+            final byte[] stackMapTable = stackMapTable();
+            out.writeShort(access);
+            out.writeShort(classFile.utf8Constant(name));
+            out.writeShort(classFile.utf8Constant(descriptor));
+            out.writeShort(1);
+            out.writeShort(classFile.utf8Constant("Code"));
+            final int attributesLength = stackMapTable == null ? 0 : 6 + stackMapTable.length;
+            out.writeInt(12 + length + attributesLength);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals());
+            out.writeInt(length);
+            out.write(code, 0, length);
+            // No exception table
+            out.writeShort(0);
+            if (stackMapTable == null) {
+                out.writeShort(0);
+                return;
+            }
+            out.writeShort(1);
+            out.writeShort(classFile.utf8Constant("StackMapTable"));
+            out.writeInt(stackMapTable.length);
+            out.write(stackMapTable);
+        }
+
+        /**
+         * Frames relative to the method's initial frame, as the locals never change: same_frame for an empty stack,
+         * same_locals_1_stack_item_frame for a string.
+         */
+        private byte[] stackMapTable() throws IOException {
+            if (frames.isEmpty()) {
+                return null;
+            }
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(frames.size());
+            int previous = -1;
+            for (final Label frame : frames) {
+                final int offsetDelta = frame.position - previous - 1;
+                previous = frame.position;
+                if (!frame.stringOnStack) {
+                    if (offsetDelta < 64) {
+                        out.writeByte(offsetDelta);
+                    }
+                    else {
+                        out.writeByte(251);
+                        out.writeShort(offsetDelta);
+                    }
+                    continue;
+                }
+                if (offsetDelta < 64) {
+                    out.writeByte(64 + offsetDelta);
+                }
+                else {
+                    out.writeByte(247);
+                    out.writeShort(offsetDelta);
+                }
+                // Object_variable_info
+                out.writeByte(7);
+                out.writeShort(classFile.classConstant(STRING));
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.markwinton.pathfaces;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>Service provider interface for supplying rewrite rules from somewhere other than
+ * <code>META-INF/rewrite-url.xml</code>, such as a database export, an embedded file store or a generated index.</p>
+ * <p>Implementations are discovered with {@link java.util.ServiceLoader}, so need to be listed in
+ * <code>META-INF/services/io.github.markwinton.pathfaces.RuleSource</code>, and are loaded once, alongside
+ * <code>rewrite-url.xml</code>. Rules from the XML file are declared first, followed by those from each source in
+ * discovery order.</p>
+ * <p>Exact-path rules with no placeholders should be supplied through {@link #vanityPaths(BiConsumer)} rather than as
+ * {@link RewriteRule}s; they are held in a compact {@link VanityPaths} store and are matched after the exact match of
+ * any {@link RewriteRule}, but before any placeholder pattern.</p>
+ */
+public interface RuleSource {
+
+    /**
+     * @return Rules with placeholders, in declaration order; never null.
+     */
+    default List<RewriteRule> rewriteRules() {
+        return List.of();
+    }
+
+    /**
+     * @return Paths to be excluded from rewriting; never null.
+     */
+    default List<IgnoredPath> ignoredPaths() {
+        return List.of();
+    }
+
+    /**
+     * Pass each exact path and the view-id it maps to, to <code>vanityPaths</code>; the paths do not need to be
+     * held in memory by the source. The view-id may have a query string, such as <code>/promo.xhtml?id=3</code>, to
+     * which any query string of the request is added.
+     * @param vanityPaths Accepts the path (without context path) and the view-id.
+     */
+    default void vanityPaths(final BiConsumer<String, String> vanityPaths) {
+    }
+}
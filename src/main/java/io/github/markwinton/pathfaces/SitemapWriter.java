@@ -0,0 +1,65 @@
+package io.github.markwinton.pathfaces;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * <p>Writes a <a href="https://www.sitemaps.org/protocol.html">sitemap</a> of pretty URLs for a stream of views,
+ * using a {@link BatchRewriter} so that URLs are rewritten in parallel and written as they are produced.</p>
+ * <p>The sitemap protocol limits each file to 50,000 URLs; splitting larger sets across files is left to the
+ * caller.</p>
+ */
+public final class SitemapWriter {
+
+    private final BatchRewriter batchRewriter;
+    private final String baseUrl;
+
+    private SitemapWriter(final BatchRewriter batchRewriter, final String baseUrl) {
+        this.batchRewriter = batchRewriter;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    /**
+     * @param batchRewriter The rewriter to use; cannot be null.
+     * @param baseUrl The scheme, host and context path to prefix each URL with,
+     *                for example <code>https://example.com/shop</code>.
+     * @return Never null.
+     */
+    public static SitemapWriter of(final BatchRewriter batchRewriter, final String baseUrl) {
+        return new SitemapWriter(batchRewriter, baseUrl);
+    }
+
+    public void write(final Stream<BookmarkableView> views, final Writer out) throws IOException {
+        write(views.iterator(), out);
+    }
+
+    public void write(final Iterator<BookmarkableView> views, final Writer out) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+        final StringBuilder entry = new StringBuilder(256);
+        try {
+            batchRewriter.rewriteViews(views, (view, result) -> {
+                entry.setLength(0);
+                entry.append("  <url><loc>");
+                Markup.appendEscaped(entry, baseUrl);
+                Markup.appendEscaped(entry, result.rewrittenUrl());
+                Markup.appendEscaped(entry, result.queryString());
+                entry.append("</loc></url>\n");
+                try {
+                    out.append(entry);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.write("</urlset>\n");
+        out.flush();
+    }
+}
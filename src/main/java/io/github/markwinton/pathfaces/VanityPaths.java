@@ -0,0 +1,182 @@
+package io.github.markwinton.pathfaces;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Compact, read-only store of exact-path rules - vanity URLs - mapping a path directly to a view-id.</p>
+ * <p>Intended for very large numbers of rules, such as those supplied by a {@link RuleSource}: all paths share a
+ * single character array, view-ids are interned so each distinct view-id is held once, and lookups use an
+ * open-addressed table of entry indexes rather than a map of entry objects. Paths match case-insensitively, as
+ * exact matches of {@link RewriteRule}s do.</p>
+ */
+public final class VanityPaths {
+
+    private static final VanityPaths EMPTY = new Builder().build();
+
+    private final char[] chars;
+    private final int[] starts;
+    private final int[] targets;
+    private final String[] viewIds;
+    private final int[] table;
+    private final int size;
+
+    private VanityPaths(
+            final char[] chars, final int[] starts, final int[] targets, final String[] viewIds,
+            final int[] table, final int size
+    ) {
+        this.chars = chars;
+        this.starts = starts;
+        this.targets = targets;
+        this.viewIds = viewIds;
+        this.table = table;
+        this.size = size;
+    }
+
+    public static VanityPaths empty() {
+        return EMPTY;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param path The request path, without context path or query string; cannot be null.
+     * @return The view-id the path maps to, or null if there is no vanity path for it.
+     */
+    public String get(final String path) {
+        final int entry = find(chars, starts, table, path);
+        return entry < 0 ? null : viewIds[targets[entry]];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static int find(final char[] chars, final int[] starts, final int[] table, final String path) {
+        final int mask = table.length - 1;
+        for (int slot = hash(path) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            final int entry = table[slot] - 1;
+            if (matches(chars, starts[entry], starts[entry + 1], path)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(final char[] chars, final int start, final int end, final String path) {
+        if (end - start != path.length()) {
+            return false;
+        }
+        for (int i = 0; i < path.length(); i++) {
+            if (chars[start + i] != CompiledRouteMatcher.foldCase(path.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(final String path) {
+        int hash = 0;
+        for (int i = 0; i < path.length(); i++) {
+            hash = 31 * hash + CompiledRouteMatcher.foldCase(path.charAt(i));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * As {@link #hash(String)}, for a path already stored case-folded.
+     */
+    private static int hash(final char[] chars, final int start, final int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Accumulates vanity paths directly into the compact representation; where a path is added more than once the
+     * first view-id is kept.
+     */
+    static final class Builder {
+
+        private final Map<String, Integer> viewIdIndexes = new HashMap<>();
+        private char[] chars = new char[256];
+        private int[] starts = new int[17];
+        private int[] targets = new int[16];
+        private int[] table = new int[32];
+        private int size;
+
+        private Builder() {
+        }
+
+        Builder add(final String path, final String viewId) {
+            if (find(chars, starts, table, path) >= 0) {
+                return this;
+            }
+            if (size == targets.length) {
+                targets = Arrays.copyOf(targets, size * 2);
+                starts = Arrays.copyOf(starts, size * 2 + 1);
+            }
+            final int start = starts[size];
+            if (start + path.length() > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, start + path.length()));
+            }
+            for (int i = 0; i < path.length(); i++) {
+                chars[start + i] = CompiledRouteMatcher.foldCase(path.charAt(i));
+            }
+            starts[size + 1] = start + path.length();
+            targets[size] = viewIdIndexes.computeIfAbsent(viewId, v -> viewIdIndexes.size());
+            size++;
+            if (size * 2 > table.length) {
+                table = new int[table.length * 2];
+                for (int entry = 0; entry < size; entry++) {
+                    insert(entry);
+                }
+            }
+            else {
+                insert(size - 1);
+            }
+            return this;
+        }
+
+        /**
+         * Add every path of the given vanity paths, as {@link #add(String, String)}; paths are added case-folded,
+         * which makes no difference to how they match.
+         */
+        Builder addAll(final VanityPaths vanityPaths) {
+            for (int entry = 0; entry < vanityPaths.size; entry++) {
+                final int start = vanityPaths.starts[entry];
+                add(new String(vanityPaths.chars, start, vanityPaths.starts[entry + 1] - start),
+                        vanityPaths.viewIds[vanityPaths.targets[entry]]);
+            }
+            return this;
+        }
+
+        private void insert(final int entry) {
+            final int mask = table.length - 1;
+            int slot = hash(chars, starts[entry], starts[entry + 1]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry + 1;
+        }
+
+        VanityPaths build() {
+            final String[] viewIds = new String[viewIdIndexes.size()];
+            viewIdIndexes.forEach((viewId, index) -> viewIds[index] = viewId);
+            final int length = starts[size];
+            return new VanityPaths(
+                    Arrays.copyOf(chars, length), Arrays.copyOf(starts, size + 1), Arrays.copyOf(targets, size),
+                    viewIds, table.clone(), size
+            );
+        }
+    }
+}
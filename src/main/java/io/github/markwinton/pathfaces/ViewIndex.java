@@ -0,0 +1,109 @@
+package io.github.markwinton.pathfaces;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Reverse lookup from a JSF view-id to the rewrite rule whose pretty URL should be used for it.</p>
+ * <p>Where several rules target the same view the first declared rule is used; view-ids matching an
+ * {@link IgnoredPath} have no rule.</p>
+ * <p>Rules are held in an open-addressed hash table keyed on the view-id, so that a view-id can be looked up
+ * straight from a character buffer without creating a string for it.</p>
+ */
+final class ViewIndex {
+
+    private final String[] viewIds;
+    private final RewriteRule[] rules;
+    private final int mask;
+
+    private ViewIndex(final String[] viewIds, final RewriteRule[] rules) {
+        this.viewIds = viewIds;
+        this.rules = rules;
+        this.mask = viewIds.length - 1;
+    }
+
+    static ViewIndex of(final RewriteConfig rewriteConfig) {
+        final List<IgnoredPath> ignoredPaths = rewriteConfig.ignoredPaths();
+        final List<RewriteRule> rewriteRules = rewriteConfig.rewriteRules();
+        // Power of two of at least twice the number of rules, so probe sequences stay short
+        final int capacity = Integer.highestOneBit(Math.max(1, rewriteRules.size()) * 2 - 1) << 1;
+        final String[] viewIds = new String[capacity];
+        final RewriteRule[] rules = new RewriteRule[capacity];
+        for (final RewriteRule rule : rewriteRules) {
+            final String viewId = rule.targetPath();
+            if (ignoredPaths.stream().anyMatch(ip -> ip.matches(viewId))) {
+                continue;
+            }
+            int slot = spread(viewId.hashCode()) & (capacity - 1);
+            while (viewIds[slot] != null && !viewIds[slot].equals(viewId)) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            // First declared rule wins
+            if (viewIds[slot] == null) {
+                viewIds[slot] = viewId;
+                rules[slot] = rule;
+            }
+        }
+        return new ViewIndex(viewIds, rules);
+    }
+
+    /**
+     * @param viewId The view-id, without context path or query string.
+     * @return The rule to use for the view-id, or null if the view-id is ignored or has no rule.
+     */
+    RewriteRule getRule(final String viewId) {
+        for (int slot = spread(viewId.hashCode()) & mask; viewIds[slot] != null; slot = (slot + 1) & mask) {
+            if (viewIds[slot].equals(viewId)) {
+                return rules[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * As {@link #getRule(String)}, for the view-id held in <code>buffer[offset]</code> to
+     * <code>buffer[offset + length - 1]</code>.
+     */
+    RewriteRule getRule(final char[] buffer, final int offset, final int length) {
+        // Same hash as String.hashCode(), so the table can be built from the view-id strings
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        for (int slot = spread(hash) & mask; viewIds[slot] != null; slot = (slot + 1) & mask) {
+            if (regionMatches(viewIds[slot], buffer, offset, length)) {
+                return rules[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param viewId The view-id, without context path or query string.
+     * @param parameters The view parameters; may be null.
+     * @param buffer Buffer in which to build the URL, cleared before use.
+     * @return The pretty URL with parameters inserted, or null if the view-id is ignored or has no rule.
+     */
+    RewriteResult rewrite(
+            final String viewId, final Map<String, List<String>> parameters, final StringBuilder buffer
+    ) {
+        final RewriteRule rule = getRule(viewId);
+        return rule == null ? null : rule.insertPathParams(parameters, buffer);
+    }
+
+    private static boolean regionMatches(final String viewId, final char[] buffer, final int offset, final int length) {
+        if (viewId.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (viewId.charAt(i) != buffer[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
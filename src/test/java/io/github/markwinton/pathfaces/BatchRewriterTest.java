@@ -0,0 +1,77 @@
+package io.github.markwinton.pathfaces;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchRewriterTest {
+
+    private static final RewriteConfig CONFIG = new RewriteConfig(
+            List.of(
+                    RewriteRule.of("/product/#{id}", "/product.xhtml"),
+                    RewriteRule.of("/home", "/index.xhtml")
+            ),
+            List.of(IgnoredPath.of("api", "/api", false))
+    );
+
+    @Test
+    void rewriteViews() {
+        final List<RewriteResult> results = new ArrayList<>();
+        BatchRewriter.of(CONFIG).rewriteViews(Stream.of(
+                BookmarkableView.of("/product.xhtml", Map.of("id", List.of("5"))),
+                BookmarkableView.of("/index.xhtml", Map.of("x", List.of("y"))),
+                BookmarkableView.of("/other.xhtml", Map.of("id", List.of("6"))),
+                BookmarkableView.of("/api/product.xhtml", null)
+        ), (view, result) -> results.add(result));
+        assertThat(results)
+                .containsExactly(
+                        new RewriteResult("/product/5", Map.of()),
+                        new RewriteResult("/home", Map.of("x", List.of("y"))),
+                        new RewriteResult("/other.xhtml", Map.of("id", List.of("6"))),
+                        new RewriteResult("/api/product.xhtml", null)
+                );
+    }
+
+    @Test
+    void rewriteViewsPreservesOrderAcrossChunks() {
+        final int count = BatchRewriter.CHUNK_SIZE * 2 + 17;
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<String> urls = new ArrayList<>();
+            BatchRewriter.of(CONFIG, executor, 4).rewriteViews(
+                    IntStream.range(0, count)
+                            .mapToObj(i -> BookmarkableView.of("/product.xhtml", Map.of("id", List.of(String.valueOf(i))))),
+                    (view, result) -> {
+                        assertThat(result.rewrittenUrl())
+                                .isEqualTo("/product/" + view.parameters().get("id").get(0));
+                        urls.add(result.rewrittenUrl());
+                    });
+            assertThat(urls)
+                    .hasSize(count)
+                    .startsWith("/product/0", "/product/1")
+                    .endsWith("/product/" + (count - 1));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void rewritePaths() {
+        final List<String> results = new ArrayList<>();
+        BatchRewriter.of(CONFIG).rewritePaths(
+                Stream.of("/product/5", "/home?x=y", "/api/product/5", "/missing"),
+                (path, rewritten) -> results.add(rewritten)
+        );
+        assertThat(results)
+                .containsExactly("/product.xhtml?id=5", "/index.xhtml?x=y", null, null);
+    }
+}
@@ -0,0 +1,251 @@
+package io.github.markwinton.pathfaces;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompiledRouteMatcherTest {
+
+    private static final List<String> SEGMENTS = List.of(
+            "", "/", "/foo", "/FOO", "/bar", "/summer-sale", "/foo/", "/baz", "/qux", "-", "x", ".", "?", "42", "/a", "/A"
+    );
+
+    private static final RewriteConfig CONFIG = new RewriteConfig(
+            List.of(
+                    RewriteRule.of("", "/root"),
+                    RewriteRule.of("/foo", "/a"),
+                    RewriteRule.of("/foo/#{bar}", "/b"),
+                    RewriteRule.of("/foo/baz", "/c"),
+                    RewriteRule.of("/Foo/Baz", "/d"),
+                    RewriteRule.of("/foo/#{bar}qux", "/e"),
+                    RewriteRule.of("/foo/bar-#{baz}/qux", "/f"),
+                    RewriteRule.of("/foo/bar?baz=qux", "/g"),
+                    RewriteRule.of("/a.b/#{x}", "/h"),
+                    RewriteRule.of("/#{title}", "/i"),
+                    RewriteRule.of("/#{x}/#{y}/#{z}", "/j")
+            ),
+            List.of(
+                    IgnoredPath.of("prefix", "/qux", false),
+                    IgnoredPath.of("exact", "/bar/", true)
+            ),
+            VanityPaths.builder()
+                    .add("/summer-sale", "/promo.xhtml?id=3")
+                    .add("/Foo/Baz", "/vanity.xhtml")
+                    .add("/qux/vanity", "/ignored.xhtml")
+                    .build()
+    );
+
+    public static Stream<Arguments> requestDetails() {
+        return Stream.of(
+                Arguments.of("", ""),
+                Arguments.of("/", ""),
+                Arguments.of("/foo", "?x=y"),
+                Arguments.of("/FOO", ""),
+                Arguments.of("/foo/", ""),
+                Arguments.of("/foo/baz", ""),
+                Arguments.of("/FOO/BAZ", ""),
+                Arguments.of("/foo/bazqux", ""),
+                Arguments.of("/foo/bar-1/qux", "?a=b"),
+                Arguments.of("/foo/bar?baz=qux", ""),
+                Arguments.of("/foo/barbaz=qux", ""),
+                Arguments.of("/fobaz=qux", ""),
+                Arguments.of("/a.b/c", ""),
+                Arguments.of("/axb/c", ""),
+                Arguments.of("/qux", ""),
+                Arguments.of("/quxx/y", ""),
+                Arguments.of("/bar/", ""),
+                Arguments.of("/bar/x", ""),
+                Arguments.of("/x/y/z", ""),
+                Arguments.of("/x/y/z/", ""),
+                Arguments.of("/summer-sale", "?x=y"),
+                Arguments.of("/SUMMER-sale", ""),
+                Arguments.of("/summer-sale/", ""),
+                Arguments.of("/qux/vanity", "")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("requestDetails")
+    void getRewrittenUrlMatchesInterpreted(String requestUrlWithoutParam, String requestParams) {
+        final RequestDetails requestDetails = new RequestDetails(requestUrlWithoutParam, requestParams);
+        assertThat(CompiledRouteMatcher.of(CONFIG).getRewrittenUrl(requestDetails))
+                .isEqualTo(RouteMatcher.interpreted(CONFIG).getRewrittenUrl(requestDetails));
+    }
+
+    @Test
+    void getRewrittenUrlMatchesInterpretedRandomRequests() {
+        final RouteMatcher compiled = CompiledRouteMatcher.of(CONFIG);
+        final RouteMatcher interpreted = RouteMatcher.interpreted(CONFIG);
+        final Random random = new Random(42);
+        final List<String> mismatches = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            final StringBuilder url = new StringBuilder();
+            final int segmentCount = random.nextInt(5);
+            for (int s = 0; s < segmentCount; s++) {
+                url.append(SEGMENTS.get(random.nextInt(SEGMENTS.size())));
+            }
+            final RequestDetails requestDetails = new RequestDetails(url.toString(), "");
+            final String expected = interpreted.getRewrittenUrl(requestDetails);
+            final String actual = compiled.getRewrittenUrl(requestDetails);
+            if (expected == null ? actual != null : !expected.equals(actual)) {
+                mismatches.add(url + " -> " + expected + " but was " + actual);
+            }
+        }
+        assertThat(mismatches)
+                .isEmpty();
+    }
+
+    @Test
+    void ofDefinesHiddenClass() {
+        assertThat(isGenerated(CompiledRouteMatcher.of(CONFIG)))
+                .isTrue();
+    }
+
+    @Test
+    void ofFallsBackToInterpreted() {
+        // Without full privilege access the hidden class cannot be defined
+        final RouteMatcher fallback
+                = CompiledRouteMatcher.of(CONFIG, PatternCache.DEFAULT_CAPACITY, MethodHandles.publicLookup());
+        assertThat(isGenerated(fallback))
+                .isFalse();
+        requestDetails()
+                .map(arguments -> new RequestDetails((String) arguments.get()[0], (String) arguments.get()[1]))
+                .forEach(requestDetails -> assertThat(fallback.getRewrittenUrl(requestDetails))
+                        .isEqualTo(RouteMatcher.interpreted(CONFIG).getRewrittenUrl(requestDetails)));
+    }
+
+    @Test
+    void ofFallsBackToInterpretedInNativeImage() {
+        System.setProperty(CompiledRouteMatcher.NATIVE_IMAGE_PROPERTY, "runtime");
+        try {
+            assertThat(isGenerated(CompiledRouteMatcher.of(CONFIG)))
+                    .isFalse();
+        }
+        finally {
+            System.clearProperty(CompiledRouteMatcher.NATIVE_IMAGE_PROPERTY);
+        }
+    }
+
+    @Test
+    void getRewrittenUrlMatchesInterpretedLargeConfig() {
+        final List<RewriteRule> rewriteRules = new ArrayList<>();
+        final List<IgnoredPath> ignoredPaths = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            rewriteRules.add(RewriteRule.of("/section-" + i + "/item/#{id}", "/section-" + i + ".xhtml"));
+            rewriteRules.add(RewriteRule.of("/Page-" + i, "/page-" + i + ".xhtml"));
+            if (i % 50 == 0) {
+                ignoredPaths.add(IgnoredPath.of("prefix-" + i, "/section-" + i + "/item/x", false));
+                ignoredPaths.add(IgnoredPath.of("exact-" + i, "/page-" + i, true));
+            }
+        }
+        rewriteRules.add(RewriteRule.of("/#{title}", "/title.xhtml"));
+        final RewriteConfig largeConfig = new RewriteConfig(rewriteRules, ignoredPaths);
+        final RouteMatcher compiled = CompiledRouteMatcher.of(largeConfig);
+        final RouteMatcher interpreted = RouteMatcher.interpreted(largeConfig);
+        assertThat(isGenerated(compiled))
+                .isTrue();
+        final Random random = new Random(42);
+        for (int i = 0; i < 300; i++) {
+            final int n = random.nextInt(550);
+            for (final String path : List.of("/section-" + n + "/item/" + i, "/section-" + n + "/item/x" + i,
+                    "/page-" + n, "/PAGE-" + n, "/section-" + n, "/section-" + n + "/item/", "/x" + n)) {
+                final RequestDetails requestDetails = new RequestDetails(path, "?i=" + i);
+                assertThat(compiled.getRewrittenUrl(requestDetails))
+                        .as(path)
+                        .isEqualTo(interpreted.getRewrittenUrl(requestDetails));
+            }
+        }
+    }
+
+    @Test
+    void getRewrittenUrlMatchesInterpretedInterleavedPrefixes() {
+        // Short and long literal prefixes interleaved in declared order, across enough rules to split methods
+        final List<RewriteRule> rewriteRules = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            rewriteRules.add(i % 3 == 0
+                    ? RewriteRule.of("/" + (char) ('a' + i % 26) + "#{x}/" + i, "/short-" + i + ".xhtml")
+                    : RewriteRule.of("/" + (char) ('a' + i % 26) + "/k\u00e9y-" + i + "/#{x}", "/long-" + i + ".xhtml"));
+            rewriteRules.add(RewriteRule.of("/\u00c9xact-" + i, "/exact-" + i + ".xhtml"));
+        }
+        final RewriteConfig interleavedConfig = new RewriteConfig(rewriteRules, List.of());
+        final RouteMatcher compiled = CompiledRouteMatcher.of(interleavedConfig, 8000);
+        final RouteMatcher interpreted = RouteMatcher.interpreted(interleavedConfig);
+        assertThat(isGenerated(compiled))
+                .isTrue();
+        final Random random = new Random(42);
+        for (int i = 0; i < 300; i++) {
+            final int n = random.nextInt(2100);
+            final char c = (char) ('a' + random.nextInt(27));
+            for (final String path : List.of("/" + c + "z/" + n, "/" + c + "/k\u00e9y-" + n + "/" + i,
+                    "/" + c + "/K\u00c9Y-" + n + "/" + i, "/\u00e9xact-" + n, "/\u00c9XACT-" + n, "/" + c)) {
+                final RequestDetails requestDetails = new RequestDetails(path, "");
+                assertThat(compiled.getRewrittenUrl(requestDetails))
+                        .as(path)
+                        .isEqualTo(interpreted.getRewrittenUrl(requestDetails));
+            }
+        }
+    }
+
+    @Test
+    void getRewrittenUrlInvalidPatternFailsOnUse() {
+        final RewriteConfig invalidConfig = new RewriteConfig(
+                List.of(RewriteRule.of("/foo[", "/a")),
+                List.of()
+        );
+        final RouteMatcher compiled = CompiledRouteMatcher.of(invalidConfig);
+        assertThat(isGenerated(compiled))
+                .isTrue();
+        assertThatThrownBy(() -> compiled.getRewrittenUrl(new RequestDetails("/foo", "")))
+                .isInstanceOf(PatternSyntaxException.class);
+    }
+
+    @Test
+    void getRewrittenUrlMatchesInterpretedWithSmallPatternCache() {
+        final RouteMatcher compiled = CompiledRouteMatcher.of(CONFIG, 2);
+        final RouteMatcher interpreted = RouteMatcher.interpreted(CONFIG);
+        requestDetails()
+                .map(arguments -> new RequestDetails((String) arguments.get()[0], (String) arguments.get()[1]))
+                .forEach(requestDetails -> assertThat(compiled.getRewrittenUrl(requestDetails))
+                        .isEqualTo(interpreted.getRewrittenUrl(requestDetails)));
+    }
+
+    public static Stream<Arguments> literalPrefixes() {
+        return Stream.of(
+                Arguments.of("/foo/([^/]+)", "/foo/"),
+                Arguments.of("/foo/bar?baz=qux", "/foo/ba"),
+                Arguments.of("/a.b", "/a"),
+                Arguments.of("([^/]+)", ""),
+                Arguments.of("/foo|/bar", ""),
+                Arguments.of("/foo", "/foo")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("literalPrefixes")
+    void literalPrefix(String regex, String expectedPrefix) {
+        assertThat(CompiledRouteMatcher.literalPrefix(regex))
+                .isEqualTo(expectedPrefix);
+    }
+
+    @Test
+    void foldCase() {
+        assertThat(CompiledRouteMatcher.foldCase("/Foo/BAR"))
+                .isEqualTo(CompiledRouteMatcher.foldCase("/fOO/bar"));
+    }
+
+    private static boolean isGenerated(final RouteMatcher routeMatcher) {
+        return routeMatcher.getClass().isHidden()
+                && routeMatcher.getClass().getName().startsWith(RouteMatcher.class.getPackageName() + ".GeneratedRouteMatcher");
+    }
+}
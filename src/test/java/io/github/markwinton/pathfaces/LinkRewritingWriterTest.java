@@ -0,0 +1,90 @@
+package io.github.markwinton.pathfaces;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LinkRewritingWriterTest {
+
+    private static final ViewIndex VIEW_INDEX = ViewIndex.of(new RewriteConfig(
+            List.of(
+                    RewriteRule.of("/product/#{id}", "/product.xhtml"),
+                    RewriteRule.of("/home", "/index.xhtml"),
+                    RewriteRule.of("/admin", "/admin/index.xhtml")
+            ),
+            List.of(IgnoredPath.of("admin", "/admin", false))
+    ));
+
+    public static Stream<Arguments> markup() {
+        return Stream.of(
+                Arguments.of("<a href=\"/product.xhtml?id=5\">x</a>", "<a href=\"/product/5\">x</a>"),
+                Arguments.of("<a class='x' HREF = '/index.xhtml'>x</a>", "<a class='x' HREF = '/home'>x</a>"),
+                Arguments.of("<form action=\"/product.xhtml?id=5&amp;x=a%20b#top\">",
+                        "<form action=\"/product/5?x=a+b#top\">"),
+                Arguments.of("<img src=\"/index.xhtml?a=1&b=2\"/>", "<img src=\"/home?a=1&amp;b=2\"/>"),
+                Arguments.of("<a title=\"href='/index.xhtml'\" href=\"/index.xhtml\">",
+                        "<a title=\"href='/index.xhtml'\" href=\"/home\">"),
+                Arguments.of("<a href=\"/other.xhtml\">", "<a href=\"/other.xhtml\">"),
+                Arguments.of("<a href=\"/product.xhtml\">", "<a href=\"/product.xhtml\">"),
+                Arguments.of("<a href=\"/product.xhtml?id=&amp;x=1\">", "<a href=\"/product.xhtml?id=&amp;x=1\">"),
+                Arguments.of("<a href=\"/admin/index.xhtml\">", "<a href=\"/admin/index.xhtml\">"),
+                Arguments.of("<a href=index.xhtml>", "<a href=index.xhtml>"),
+                Arguments.of("<a data-href=\"/index.xhtml\">", "<a data-href=\"/index.xhtml\">"),
+                Arguments.of("href=\"/index.xhtml\" <p>text</p>", "href=\"/index.xhtml\" <p>text</p>")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("markup")
+    void write(String markup, String expected) throws IOException {
+        assertThat(rewrite(markup, "", markup.length()))
+                .isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 7})
+    void writeInChunks(int chunkSize) throws IOException {
+        final String markup = "<p><a href=\"/product.xhtml?id=5\">5</a> <a href='/index.xhtml'>home</a></p>";
+        assertThat(rewrite(markup, "", chunkSize))
+                .isEqualTo("<p><a href=\"/product/5\">5</a> <a href='/home'>home</a></p>");
+    }
+
+    @Test
+    void writeWithContextPath() throws IOException {
+        assertThat(rewrite("<a href=\"/shop/index.xhtml\"><a href=\"/index.xhtml\">", "/shop", 5))
+                .isEqualTo("<a href=\"/shop/home\"><a href=\"/index.xhtml\">");
+    }
+
+    @Test
+    void writeValueLongerThanBuffer() throws IOException {
+        final String longValue = "/index.xhtml?x=" + "y".repeat(LinkRewritingWriter.MAX_VALUE_LENGTH);
+        final String markup = "<a href=\"" + longValue + "\"><a href=\"/index.xhtml\">";
+        assertThat(rewrite(markup, "", 100))
+                .isEqualTo("<a href=\"" + longValue + "\"><a href=\"/home\">");
+    }
+
+    @Test
+    void finishWritesUnterminatedValue() throws IOException {
+        assertThat(rewrite("<a href=\"/index.xhtml", "", 4))
+                .isEqualTo("<a href=\"/index.xhtml");
+    }
+
+    private static String rewrite(String markup, String contextPath, int chunkSize) throws IOException {
+        final StringWriter out = new StringWriter();
+        final LinkRewritingWriter writer = new LinkRewritingWriter(out, VIEW_INDEX, contextPath);
+        for (int i = 0; i < markup.length(); i += chunkSize) {
+            writer.write(markup, i, Math.min(chunkSize, markup.length() - i));
+        }
+        writer.finish();
+        return out.toString();
+    }
+}
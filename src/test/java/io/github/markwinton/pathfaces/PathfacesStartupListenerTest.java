@@ -0,0 +1,69 @@
+package io.github.markwinton.pathfaces;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Loads the process-wide configuration, from a <code>rewrite-url.xml</code> on the context class loader.
+ */
+class PathfacesStartupListenerTest {
+
+    @TempDir
+    static Path tempDir;
+    private static ClassLoader contextClassLoader;
+    private static URLClassLoader classLoader;
+
+    @BeforeAll
+    static void setContextClassLoader() throws IOException {
+        final Path configFile = tempDir.resolve("META-INF/rewrite-url.xml");
+        Files.createDirectories(configFile.getParent());
+        Files.writeString(configFile, """
+                <rewrite-url>
+                    <url-mapping id="startup">
+                        <pattern value="/startup/#{id}"/>
+                        <view-id value="/startup.xhtml"/>
+                    </url-mapping>
+                </rewrite-url>
+                """);
+        contextClassLoader = Thread.currentThread().getContextClassLoader();
+        classLoader = new URLClassLoader(new URL[]{tempDir.toUri().toURL()}, contextClassLoader);
+        Thread.currentThread().setContextClassLoader(classLoader);
+    }
+
+    @AfterAll
+    static void restoreContextClassLoader() throws IOException {
+        Thread.currentThread().setContextClassLoader(contextClassLoader);
+        classLoader.close();
+    }
+
+    @Test
+    void initialize() {
+        final RewriteConfig rewriteConfig = RewrittenURLs.initialize();
+        assertThat(rewriteConfig.rewriteRules())
+                .extracting(RewriteRule::id)
+                .containsExactly("startup");
+        assertThat(RewrittenURLs.initialize())
+                .isSameAs(rewriteConfig);
+    }
+
+    @Test
+    void contextInitialized() {
+        new PathfacesStartupListener().contextInitialized(null);
+        assertThat(RewrittenURLs.getRewriteConfig())
+                .isSameAs(RewrittenURLs.initialize())
+                .extracting(RewriteConfig::rewriteRules)
+                .satisfies(rules -> assertThat(rules)
+                        .extracting(RewriteRule::id)
+                        .containsExactly("startup"));
+    }
+}
@@ -0,0 +1,86 @@
+package io.github.markwinton.pathfaces;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PatternCacheTest {
+
+    @Test
+    void getCompilesOnFirstUse() {
+        final PatternCache cache = new PatternCache(2);
+        final PatternCache.LazyPattern lazyPattern = cache.lazyPattern("/foo/([^/]+)");
+        assertThat(cache.residentCount())
+                .isZero();
+        final Pattern pattern = lazyPattern.get();
+        assertThat(pattern.pattern())
+                .isEqualTo("/foo/([^/]+)");
+        assertThat(lazyPattern.get())
+                .isSameAs(pattern);
+        assertThat(cache.residentCount())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void getEvictsUnreferencedPatterns() {
+        final PatternCache cache = new PatternCache(2);
+        final PatternCache.LazyPattern a = cache.lazyPattern("a");
+        final PatternCache.LazyPattern b = cache.lazyPattern("b");
+        final PatternCache.LazyPattern c = cache.lazyPattern("c");
+        final Pattern aPattern = a.get();
+        final Pattern bPattern = b.get();
+        // Mark a as used since being compiled, so b is evicted in its place
+        a.get();
+        c.get();
+        assertThat(cache.residentCount())
+                .isEqualTo(2);
+        assertThat(a.get())
+                .isSameAs(aPattern);
+        assertThat(b.get())
+                .isNotSameAs(bPattern)
+                .returns("b", Pattern::pattern);
+    }
+
+    @Test
+    void lazyPatternSharedForRegex() {
+        final PatternCache cache = new PatternCache(2);
+        assertThat(cache.lazyPattern("a"))
+                .isSameAs(cache.lazyPattern("a"))
+                .isNotSameAs(new PatternCache(2).lazyPattern("a"));
+    }
+
+    @Test
+    void ofSharesDefaultCapacity() {
+        assertThat(PatternCache.of(PatternCache.DEFAULT_CAPACITY))
+                .isSameAs(PatternCache.SHARED);
+        assertThat(PatternCache.of(2))
+                .isNotSameAs(PatternCache.SHARED);
+    }
+
+    @Test
+    void preloadCompilesUntilFull() {
+        final PatternCache cache = new PatternCache(2);
+        final PatternCache.LazyPattern invalid = cache.lazyPattern("(");
+        final PatternCache.LazyPattern a = cache.lazyPattern("a");
+        final PatternCache.LazyPattern b = cache.lazyPattern("b");
+        final PatternCache.LazyPattern c = cache.lazyPattern("c");
+        cache.preload(List.of(invalid, a, b, c));
+        assertThat(cache.residentCount())
+                .isEqualTo(2);
+        final Pattern aPattern = a.get();
+        final Pattern bPattern = b.get();
+        assertThat(cache.residentCount())
+                .isEqualTo(2);
+        assertThat(a.get())
+                .isSameAs(aPattern);
+        assertThat(b.get())
+                .isSameAs(bPattern);
+        assertThatThrownBy(invalid::get)
+                .isInstanceOf(PatternSyntaxException.class);
+    }
+}
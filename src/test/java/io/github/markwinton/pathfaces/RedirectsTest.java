@@ -0,0 +1,125 @@
+package io.github.markwinton.pathfaces;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RedirectsTest {
+
+    private static final RewriteRule HOME = RewriteRule.of("home", "/home/#{title}", "/index.xhtml");
+    private static final RewriteRule ABOUT = RewriteRule.of("about", "/about", "/about.xhtml");
+
+    private static final RewriteConfig CONFIG = new RewriteConfig(
+            List.of(HOME, ABOUT),
+            List.of(IgnoredPath.of("api", "/api", false)),
+            VanityPaths.empty(),
+            List.of(
+                    RedirectRule.of("legacy-home", "/index.xhtml", HOME, 301),
+                    RedirectRule.of("trailing-slash", "/home/#{title}/", HOME, 308),
+                    RedirectRule.of("home-case", "/home/#{title}", HOME, 301),
+                    RedirectRule.of("legacy-about", "/about.html", ABOUT, 301),
+                    RedirectRule.of("about-case", "/about", ABOUT, 301),
+                    RedirectRule.of("api", "/api/old", ABOUT, 301)
+            )
+    );
+
+    public static Stream<Arguments> redirects() {
+        return Stream.of(
+                Arguments.of("/index.xhtml", "title=hello-world", 301, "/ctx/home/hello-world"),
+                Arguments.of("/index.xhtml", "title=a+b&x=y", 301, "/ctx/home/a%20b?x=y"),
+                Arguments.of("/index.xhtml", "title=a%2Bb", 301, "/ctx/home/a%2Bb"),
+                Arguments.of("/home/hello-world/", null, 308, "/ctx/home/hello-world"),
+                Arguments.of("/HOME/hello-world", null, 301, "/ctx/home/hello-world"),
+                Arguments.of("/home/a%20b/", null, 308, "/ctx/home/a%20b"),
+                Arguments.of("/home/a+b", null, 301, "/ctx/home/a%20b"),
+                Arguments.of("/about.html", null, 301, "/ctx/about"),
+                Arguments.of("/About.HTML", "", 301, "/ctx/about"),
+                Arguments.of("/about.html", "x=y", 301, "/ctx/about?x=y"),
+                Arguments.of("/ABOUT", null, 301, "/ctx/about")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("redirects")
+    void getRedirect(String path, String queryString, int expectedStatus, String expectedLocation) {
+        assertThat(Redirects.of(CONFIG, "/ctx").getRedirect("GET", path, queryString))
+                .isEqualTo(new Redirects.Redirect(expectedStatus, expectedLocation));
+    }
+
+    public static Stream<Arguments> notRedirected() {
+        return Stream.of(
+                Arguments.of("/home/hello-world", null),
+                Arguments.of("/home/hello-world", "x=y"),
+                Arguments.of("/about", null),
+                Arguments.of("/about", "x=y"),
+                Arguments.of("/api/old", null),
+                Arguments.of("/other", null),
+                Arguments.of("/index.xhtml", "title=%zz"),
+                Arguments.of("/index.xhtml", null),
+                Arguments.of("/index.xhtml", "x=y"),
+                Arguments.of("/index.xhtml", "title="),
+                Arguments.of("/home/a%20b", null),
+                Arguments.of("/home/a%2Bb", null)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("notRedirected")
+    void getRedirectNotRedirected(String path, String queryString) {
+        assertThat(Redirects.of(CONFIG, "/ctx").getRedirect("GET", path, queryString))
+                .isNull();
+    }
+
+    @ParameterizedTest
+    @MethodSource("redirects")
+    void getRedirectLocationNotRedirected(String path, String queryString, int expectedStatus, String expectedLocation) {
+        final Redirects redirects = Redirects.of(CONFIG, "/ctx");
+        final String location = redirects.getRedirect("GET", path, queryString).location()
+                .substring("/ctx".length());
+        final RequestDetails locationDetails = RewriteURLFilter.getRequestDetails(location);
+        final String locationQuery = locationDetails.requestParams().isEmpty()
+                ? null
+                : locationDetails.requestParams().substring(1);
+        assertThat(redirects.getRedirect("GET", locationDetails.requestUrlWithoutParam(), locationQuery))
+                .isNull();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"POST", "PUT", "DELETE", "PATCH", "OPTIONS"})
+    void getRedirectOnlyGetAndHead(String method) {
+        final Redirects redirects = Redirects.of(CONFIG, "/ctx");
+        assertThat(redirects.getRedirect(method, "/index.xhtml", "title=hello-world"))
+                .isNull();
+        assertThat(redirects.getRedirect("HEAD", "/index.xhtml", "title=hello-world"))
+                .isEqualTo(new Redirects.Redirect(301, "/ctx/home/hello-world"));
+    }
+
+    @Test
+    void getRedirectStaticRedirectPrecomputed() {
+        final Redirects redirects = Redirects.of(CONFIG, "");
+        assertThat(redirects.getRedirect("GET", "/about.html", null))
+                .isSameAs(redirects.getRedirect("GET", "/about.html", null));
+    }
+
+    @Test
+    void ofInvalidPatternIgnored() {
+        final RewriteConfig config = new RewriteConfig(List.of(ABOUT), List.of(), VanityPaths.empty(),
+                List.of(RedirectRule.of("invalid", "/about[", ABOUT, 301)));
+        assertThat(Redirects.of(config, ""))
+                .returns(true, Redirects::isEmpty);
+    }
+
+    @Test
+    void redirectRuleInvalidStatus() {
+        assertThatThrownBy(() -> RedirectRule.of("invalid", "/about.html", ABOUT, 200))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.markwinton.pathfaces;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RewriteResultTest {
+
+    @Test
+    void queryString() {
+        assertThat(new RewriteResult("/a", Map.of("a", List.of("1", "2&3"))).queryString())
+                .isEqualTo("?a=1&a=2%263");
+    }
+
+    @Test
+    void queryStringNoParameters() {
+        assertThat(new RewriteResult("/a", null).queryString())
+                .isEmpty();
+    }
+
+    @Test
+    void parseQuery() {
+        assertThat(RewriteResult.parseQuery("a=1&a=2&b&c=x%20y&&d=+"))
+                .isEqualTo(Map.of("a", List.of("1", "2"), "b", List.of(""), "c", List.of("x y"), "d", List.of(" ")));
+    }
+}
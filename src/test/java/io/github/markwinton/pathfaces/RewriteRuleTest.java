@@ -60,6 +60,16 @@ class RewriteRuleTest {
                 .isEqualTo(expectedRewrite);
     }
 
+    @Test
+    void rewriteKeepsPatternCompiled() {
+        final RewriteRule rule = RewriteRule.of("/compiled/#{id}", "/index.xhtml");
+        assertThat(rule.rewrite("/compiled/5"))
+                .isEqualTo("/index.xhtml?id=5");
+        // Rules with the same pattern share the one compiled by the first use
+        assertThat(RewriteRule.of("/compiled/#{id}", "/other.xhtml").lazyPattern().get())
+                .isSameAs(rule.lazyPattern().get());
+    }
+
     @Test
     void insertPathParams() {
         final RewriteRule rule = RewriteRule.of("/foo/#{x}/#{bar}/bar", "index");
@@ -1,12 +1,31 @@
 package io.github.markwinton.pathfaces;
 
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.RequestDispatcher;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -43,6 +62,30 @@ class RewriteURLFilterTest {
                 .isEqualTo("/a?bar=baz");
     }
 
+    @Test
+    void getRewrittenUrlMatchWithPathAndQueryParameters() {
+        final List<RewriteRule> rules = List.of(
+                RewriteRule.of("/foo/#{bar}", "/a")
+        );
+        final RequestDetails requestDetails = new RequestDetails("/foo/baz", "?x=y");
+        assertThat(RewriteURLFilter.getRewrittenUrl(rules, requestDetails))
+                .isEqualTo("/a?bar=baz&x=y");
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+            "?x=y, /promo.xhtml?id=3&x=y",
+            "?, /promo.xhtml?id=3",
+            "'', /promo.xhtml?id=3"
+    })
+    void getRewrittenUrlVanityPathWithQuery(String requestParams, String expected) {
+        final RewriteConfig rewriteConfig = new RewriteConfig(List.of(), List.of(),
+                VanityPaths.builder().add("/summer-sale", "/promo.xhtml?id=3").build());
+        final RequestDetails requestDetails = new RequestDetails("/summer-sale", requestParams);
+        assertThat(RewriteURLFilter.getRewrittenUrl(rewriteConfig, requestDetails))
+                .isEqualTo(expected);
+    }
+
     @ParameterizedTest
     @ValueSource(strings = {"/foo/qux", "/bar"})
     void getRewrittenUrlNoMatch(String url) {
@@ -142,4 +185,199 @@ class RewriteURLFilterTest {
         assertThat(RewriteURLFilter.getRewrittenUrl(rewriteConfig, requestDetails))
                 .isEqualTo("/a?title=foo");
     }
-}
\ No newline at end of file
+
+    @Test
+    void doFilterAsyncDispatchNotRematched() throws IOException, ServletException {
+        final ServletRequest request = (ServletRequest) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{ServletRequest.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getDispatcherType")) {
+                        return DispatcherType.ASYNC;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        final ServletResponse response = (ServletResponse) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{ServletResponse.class},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        final List<ServletRequest> chained = new ArrayList<>();
+        new RewriteURLFilter().doFilter(request, response, (req, res) -> chained.add(req));
+        assertThat(chained)
+                .hasSize(1);
+        assertThat(chained.get(0))
+                .isSameAs(request);
+    }
+
+    @Test
+    void doFilterAsyncDispatch() throws IOException, ServletException {
+        final List<String> calls = new ArrayList<>();
+        final AsyncContext asyncContext = stub(AsyncContext.class, (method, args) -> {
+            calls.add(method + " " + args[0]);
+            return null;
+        });
+        final HttpServletRequest request = stubRequest("/foo", (method, args) -> switch (method) {
+            case "isAsyncSupported" -> true;
+            case "startAsync" -> asyncContext;
+            default -> throw new UnsupportedOperationException(method);
+        });
+        filter(Map.of(RewriteURLFilter.ASYNC_DISPATCH_PARAM, "true"))
+                .doFilter(request, stubResponse(new StringWriter()), (req, res) -> calls.add("chain"));
+        assertThat(calls)
+                .containsExactly("dispatch /a");
+    }
+
+    @Test
+    void doFilterAsyncDispatchNotSupportedIncludes() throws IOException, ServletException {
+        final List<String> calls = new ArrayList<>();
+        final RequestDispatcher dispatcher = stub(RequestDispatcher.class, (method, args) -> {
+            calls.add(method);
+            return null;
+        });
+        final HttpServletRequest request = stubRequest("/foo", (method, args) -> switch (method) {
+            case "isAsyncSupported" -> false;
+            case "isAsyncStarted" -> false;
+            case "getRequestDispatcher" -> {
+                calls.add(method + " " + args[0]);
+                yield dispatcher;
+            }
+            default -> throw new UnsupportedOperationException(method);
+        });
+        filter(Map.of(RewriteURLFilter.ASYNC_DISPATCH_PARAM, "true"))
+                .doFilter(request, stubResponse(new StringWriter()), (req, res) -> calls.add("chain"));
+        assertThat(calls)
+                .containsExactly("getRequestDispatcher /a", "include");
+    }
+
+    @Test
+    void doFilterLinkRewritingFinishedWhenAsyncCompletes() throws IOException, ServletException {
+        final List<AsyncListener> listeners = new ArrayList<>();
+        final AsyncContext asyncContext = stub(AsyncContext.class, (method, args) -> {
+            if (method.equals("addListener")) {
+                listeners.add((AsyncListener) args[0]);
+                return null;
+            }
+            throw new UnsupportedOperationException(method);
+        });
+        final HttpServletRequest request = stubRequest("/other", (method, args) -> switch (method) {
+            case "isAsyncStarted" -> true;
+            case "getAsyncContext" -> asyncContext;
+            default -> throw new UnsupportedOperationException(method);
+        });
+        final StringWriter out = new StringWriter();
+        // The servlet starts async processing, leaving the end of the markup to be written from another thread
+        filter(Map.of(RewriteURLFilter.REWRITE_LINKS_PARAM, "true"))
+                .doFilter(request, stubResponse(out), (req, res) -> res.getWriter().write("<a href=\"/foo"));
+        assertThat(out.toString())
+                .isEqualTo("<a href=\"");
+        assertThat(listeners)
+                .hasSize(1);
+
+        listeners.get(0).onComplete(null);
+        assertThat(out.toString())
+                .isEqualTo("<a href=\"/foo");
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {"stream, setContentLengthLong 5", "writer, ", "none, setContentLengthLong 5"})
+    void doFilterLinkRewritingContentLength(String output, String expected) throws IOException, ServletException {
+        final HttpServletRequest request = stubRequest("/other", (method, args) -> switch (method) {
+            case "isAsyncStarted" -> false;
+            default -> throw new UnsupportedOperationException(method);
+        });
+        final List<String> calls = new ArrayList<>();
+        final PrintWriter writer = new PrintWriter(new StringWriter());
+        final HttpServletResponse response = stub(HttpServletResponse.class, (method, args) -> switch (method) {
+            case "getWriter" -> writer;
+            case "getOutputStream", "getContentType" -> null;
+            case "setContentLengthLong" -> calls.add(method + " " + args[0]);
+            default -> throw new UnsupportedOperationException(method);
+        });
+        // The length is set before the output is chosen, and there is no content type to go by
+        filter(Map.of(RewriteURLFilter.REWRITE_LINKS_PARAM, "true")).doFilter(request, response, (req, res) -> {
+            res.setContentLength(5);
+            switch (output) {
+                case "stream" -> res.getOutputStream();
+                case "writer" -> res.getWriter().write("<a/>!");
+                default -> {
+                }
+            }
+        });
+        assertThat(calls)
+                .containsExactlyElementsOf(expected == null ? List.of() : List.of(expected));
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {"POST, chain", "GET, setStatus 301|setHeader Location /home/x|setContentLength 0"})
+    void doFilterRedirectsOnlyGet(String method, String expected) throws IOException, ServletException {
+        final RewriteRule home = RewriteRule.of("home", "/home/#{title}", "/index.xhtml");
+        final RewriteConfig rewriteConfig = new RewriteConfig(List.of(home), List.of(), VanityPaths.empty(),
+                List.of(RedirectRule.of("legacy-home", "/index.xhtml", home, 301)));
+        final HttpServletRequest request = stubRequest("/index.xhtml", (name, args) -> switch (name) {
+            case "getMethod" -> method;
+            case "getQueryString" -> "title=x";
+            case "isAsyncStarted" -> false;
+            default -> throw new UnsupportedOperationException(name);
+        });
+        final List<String> calls = new ArrayList<>();
+        final HttpServletResponse response = stub(HttpServletResponse.class, (name, args) -> switch (name) {
+            case "setStatus", "setHeader", "setContentLength" -> calls.add(name + " " + Stream.of(args)
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(" ")));
+            default -> throw new UnsupportedOperationException(name);
+        });
+        // A JSF postback to the view-id must reach the view rather than be redirected
+        filter(rewriteConfig, Map.of()).doFilter(request, response, (req, res) -> calls.add("chain"));
+        assertThat(calls)
+                .containsExactly(expected.split("\\|"));
+    }
+
+    private static RewriteURLFilter filter(final Map<String, String> initParameters) {
+        return filter(new RewriteConfig(List.of(RewriteRule.of("/foo", "/a")), List.of()), initParameters);
+    }
+
+    private static RewriteURLFilter filter(
+            final RewriteConfig rewriteConfig, final Map<String, String> initParameters
+    ) {
+        final ServletContext servletContext = stub(ServletContext.class, (method, args) -> switch (method) {
+            case "getContextPath" -> "";
+            default -> throw new UnsupportedOperationException(method);
+        });
+        final FilterConfig filterConfig = stub(FilterConfig.class, (method, args) -> switch (method) {
+            case "getInitParameter" -> initParameters.get((String) args[0]);
+            case "getServletContext" -> servletContext;
+            default -> throw new UnsupportedOperationException(method);
+        });
+        final RewriteURLFilter filter = new RewriteURLFilter();
+        filter.init(rewriteConfig, filterConfig);
+        return filter;
+    }
+
+    private static HttpServletRequest stubRequest(final String requestUri, final Answer answer) {
+        return stub(HttpServletRequest.class, (method, args) -> switch (method) {
+            case "getDispatcherType" -> DispatcherType.REQUEST;
+            case "getContextPath" -> "";
+            case "getRequestURI" -> requestUri;
+            default -> answer.answer(method, args);
+        });
+    }
+
+    private static HttpServletResponse stubResponse(final StringWriter out) {
+        final PrintWriter writer = new PrintWriter(out);
+        return stub(HttpServletResponse.class, (method, args) -> switch (method) {
+            case "getWriter" -> writer;
+            case "getContentType" -> null;
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    private static <T> T stub(final Class<T> type, final Answer answer) {
+        return type.cast(Proxy.newProxyInstance(RewriteURLFilterTest.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> answer.answer(method.getName(), args)));
+    }
+
+    @FunctionalInterface
+    private interface Answer {
+        Object answer(String method, Object[] args) throws Throwable;
+    }
+}
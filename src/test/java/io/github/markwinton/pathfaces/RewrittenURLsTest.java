@@ -0,0 +1,302 @@
+package io.github.markwinton.pathfaces;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class RewrittenURLsTest {
+
+    @Test
+    void withRuleSources() {
+        final RewriteConfig xmlConfig = new RewriteConfig(
+                List.of(RewriteRule.of("home", "/home", "/index.xhtml")),
+                List.of(IgnoredPath.of("api", "/api"))
+        );
+        final RuleSource ruleSource = new RuleSource() {
+            @Override
+            public List<RewriteRule> rewriteRules() {
+                return List.of(RewriteRule.of("product", "/product/#{id}", "/product.xhtml"));
+            }
+
+            @Override
+            public void vanityPaths(final BiConsumer<String, String> vanityPaths) {
+                vanityPaths.accept("/summer-sale", "/promo.xhtml");
+            }
+        };
+        final RuleSource failingSource = new RuleSource() {
+            @Override
+            public List<IgnoredPath> ignoredPaths() {
+                throw new IllegalStateException("Unavailable");
+            }
+        };
+        final RuleSource partlyFailingSource = new RuleSource() {
+            @Override
+            public List<IgnoredPath> ignoredPaths() {
+                return List.of(IgnoredPath.of("partial", "/partial"));
+            }
+
+            @Override
+            public void vanityPaths(final BiConsumer<String, String> vanityPaths) {
+                vanityPaths.accept("/winter-sale", "/promo.xhtml");
+                throw new IllegalStateException("Connection lost");
+            }
+        };
+
+        final RewriteConfig rewriteConfig = RewrittenURLs.withRuleSources(
+                xmlConfig, List.of(ruleSource, failingSource, partlyFailingSource));
+        assertThat(rewriteConfig.rewriteRules())
+                .extracting(RewriteRule::id)
+                .containsExactly("home", "product");
+        assertThat(rewriteConfig.ignoredPaths())
+                .extracting(IgnoredPath::id)
+                .containsExactly("api");
+        assertThat(rewriteConfig.vanityPaths().get("/summer-sale"))
+                .isEqualTo("/promo.xhtml");
+        assertThat(rewriteConfig.vanityPaths().get("/winter-sale"))
+                .isNull();
+    }
+
+    @Test
+    void loadXmlRewriteRules(@TempDir Path tempDir) throws IOException {
+        final Path first = writeConfig(tempDir.resolve("first"), """
+                <rewrite-url>
+                    <url-mapping id="home">
+                        <pattern value="/home"/>
+                        <view-id value="/index.xhtml"/>
+                    </url-mapping>
+                    <url-mapping id="incomplete">
+                        <pattern value="/incomplete"/>
+                    </url-mapping>
+                    <ignored-path id="api">
+                        <path value="/api/"/>
+                        <is-exact value="false"/>
+                    </ignored-path>
+                    <redirect id="legacy-product">
+                        <pattern value="/product.xhtml"/>
+                        <view-id value="/product.xhtml"/>
+                        <status value="308"/>
+                    </redirect>
+                </rewrite-url>
+                """);
+        final Path second = writeConfig(tempDir.resolve("second"), """
+                <rewrite-url>
+                    <url-mapping id="product">
+                        <pattern value="/product/#{id}"/>
+                        <view-id value="/product.xhtml"/>
+                    </url-mapping>
+                </rewrite-url>
+                """);
+        final Path invalid = writeConfig(tempDir.resolve("invalid"), "<rewrite-url>");
+
+        try (URLClassLoader classLoader = new URLClassLoader(
+                new URL[]{first.toUri().toURL(), invalid.toUri().toURL(), second.toUri().toURL()}, null)) {
+            final RewriteConfig rewriteConfig = RewrittenURLs.loadXmlRewriteRules(classLoader);
+            assertThat(rewriteConfig.rewriteRules())
+                    .extracting(RewriteRule::id)
+                    .containsExactly("home", "product");
+            assertThat(rewriteConfig.ignoredPaths())
+                    .containsExactly(IgnoredPath.of("api", "/api/", false));
+            assertThat(rewriteConfig.redirectRules())
+                    .extracting(RedirectRule::id, r -> r.to().id(), RedirectRule::status)
+                    .containsExactly(tuple("legacy-product", "product", 308));
+        }
+    }
+
+    @Test
+    void loadXmlRewriteRulesMergesInStableOrder(@TempDir Path tempDir) throws IOException {
+        final Path classes = writeConfig(tempDir.resolve("classes"), homeMapping("/classes.xhtml"));
+        final Path moduleA = writeJar(tempDir.resolve("z/module-a.jar"), homeMapping("/module-a.xhtml"));
+        final Path moduleB = writeJar(tempDir.resolve("a/module-b.jar"), homeMapping("/module-b.xhtml"));
+
+        // Whatever the class path order, the application's classes come first, then JARs by file name
+        for (final List<Path> classPath
+                : List.of(List.of(moduleB, classes, moduleA), List.of(moduleA, moduleB, classes))) {
+            final URL[] urls = new URL[classPath.size()];
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = classPath.get(i).toUri().toURL();
+            }
+            try (URLClassLoader classLoader = new URLClassLoader(urls, null)) {
+                assertThat(RewrittenURLs.loadXmlRewriteRules(classLoader).rewriteRules())
+                        .extracting(RewriteRule::targetPath)
+                        .containsExactly("/classes.xhtml", "/module-a.xhtml", "/module-b.xhtml");
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+            "jar:file:/app/WEB-INF/lib/module.jar!/META-INF/rewrite-url.xml, module.jar",
+            "jar:file:/app.jar!/BOOT-INF/lib/module.jar!/META-INF/rewrite-url.xml, module.jar",
+            "jar:file:/app.jar!/BOOT-INF/classes!/META-INF/rewrite-url.xml, ''",
+            "file:/app/WEB-INF/classes/META-INF/rewrite-url.xml, ''"
+    })
+    void jarName(String url, String expected) throws IOException {
+        assertThat(RewrittenURLs.jarName(URI.create(url).toURL()))
+                .isEqualTo(expected);
+    }
+
+    @Test
+    void loadXmlRewriteRulesUsesCallersParser(@TempDir Path tempDir) throws IOException {
+        final Path first = writeConfig(tempDir.resolve("first"), "<rewrite-url/>");
+        final Path second = writeConfig(tempDir.resolve("second"), "<rewrite-url/>");
+        final Path service = tempDir.resolve("parser/META-INF/services/" + DocumentBuilderFactory.class.getName());
+        Files.createDirectories(service.getParent());
+        Files.writeString(service, CountingDocumentBuilderFactory.class.getName());
+
+        final Thread thread = Thread.currentThread();
+        final ClassLoader contextClassLoader = thread.getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{
+                first.toUri().toURL(), second.toUri().toURL(), tempDir.resolve("parser").toUri().toURL()
+        }, RewrittenURLsTest.class.getClassLoader())) {
+            thread.setContextClassLoader(classLoader);
+            CountingDocumentBuilderFactory.BUILDERS.set(0);
+            RewrittenURLs.loadXmlRewriteRules(classLoader);
+            assertThat(CountingDocumentBuilderFactory.BUILDERS)
+                    .hasValue(2);
+        }
+        finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    @Test
+    void loadXmlRewriteRulesNoConfig(@TempDir Path tempDir) throws IOException {
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{tempDir.toUri().toURL()}, null)) {
+            assertThat(RewrittenURLs.loadXmlRewriteRules(classLoader))
+                    .isEqualTo(RewriteConfig.empty());
+        }
+    }
+
+    @Test
+    void compilePatterns() {
+        final PatternCache patternCache = new PatternCache(2);
+        final RewriteConfig rewriteConfig = new RewriteConfig(List.of(
+                RewriteRule.of("invalid", "/foo[", "/invalid.xhtml"),
+                RewriteRule.of("/product/#{id}", "/product.xhtml"),
+                RewriteRule.of("/home", "/index.xhtml"),
+                RewriteRule.of("/about", "/about.xhtml")
+        ), List.of());
+        // An invalid pattern is logged rather than failing startup
+        RewrittenURLs.compilePatterns(rewriteConfig, patternCache);
+        assertThat(rewriteConfig.rewriteRules())
+                .extracting(rule -> patternCache.lazyPattern(rule.urlPatternRegex()).isResident())
+                .containsExactly(false, true, true, false);
+    }
+
+    @Test
+    void mergeFragments() {
+        final RewriteConfig rewriteConfig = RewrittenURLs.mergeFragments(List.of(
+                new RewrittenURLs.ConfigFragment("a", List.of(
+                        RewriteRule.of("home", "/home", "/index.xhtml"),
+                        RewriteRule.of("", "/start", "/index.xhtml")
+                ), List.of(IgnoredPath.of("api", "/api")), List.of(
+                        new RewrittenURLs.RedirectMapping("legacy-welcome", "/welcome.xhtml", "/index.xhtml", ""),
+                        new RewrittenURLs.RedirectMapping("unmapped", "/old", "/unmapped.xhtml", "301")
+                )),
+                new RewrittenURLs.ConfigFragment("b", List.of(
+                        RewriteRule.of("home", "/other-home", "/other.xhtml"),
+                        RewriteRule.of("", "/begin", "/begin.xhtml"),
+                        RewriteRule.of("welcome", "/welcome", "/index.xhtml")
+                ), List.of(IgnoredPath.of("static", "/static")), List.of(
+                        new RewrittenURLs.RedirectMapping("legacy-other", "/other.html", "/other.xhtml", "308"),
+                        new RewrittenURLs.RedirectMapping("legacy-begin", "/begin.html", "/begin.xhtml", "200")
+                ))
+        ));
+        assertThat(rewriteConfig.rewriteRules())
+                .extracting(RewriteRule::prettyUrl)
+                .containsExactly("/home", "/start", "/begin", "/welcome");
+        assertThat(rewriteConfig.ignoredPaths())
+                .extracting(IgnoredPath::id)
+                .containsExactly("api", "static");
+        // Neither /unmapped.xhtml nor the dropped duplicate /other.xhtml mapping can be redirected to
+        assertThat(rewriteConfig.redirectRules())
+                .extracting(RedirectRule::id, r -> r.to().prettyUrl(), RedirectRule::status)
+                .containsExactly(
+                        tuple("legacy-welcome", "/home", 301),
+                        tuple("legacy-begin", "/begin", 301)
+                );
+    }
+
+    /**
+     * Stands in for an application's own JAXP implementation.
+     */
+    public static final class CountingDocumentBuilderFactory extends DocumentBuilderFactory {
+
+        static final AtomicInteger BUILDERS = new AtomicInteger();
+        private final DocumentBuilderFactory delegate = DocumentBuilderFactory.newDefaultInstance();
+
+        @Override
+        public DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+            BUILDERS.incrementAndGet();
+            return delegate.newDocumentBuilder();
+        }
+
+        @Override
+        public void setAttribute(final String name, final Object value) {
+            delegate.setAttribute(name, value);
+        }
+
+        @Override
+        public Object getAttribute(final String name) {
+            return delegate.getAttribute(name);
+        }
+
+        @Override
+        public void setFeature(final String name, final boolean value) throws ParserConfigurationException {
+            delegate.setFeature(name, value);
+        }
+
+        @Override
+        public boolean getFeature(final String name) throws ParserConfigurationException {
+            return delegate.getFeature(name);
+        }
+    }
+
+    private static String homeMapping(final String viewId) {
+        return """
+                <rewrite-url>
+                    <url-mapping>
+                        <pattern value="/home"/>
+                        <view-id value="%s"/>
+                    </url-mapping>
+                </rewrite-url>
+                """.formatted(viewId);
+    }
+
+    private static Path writeJar(final Path jar, final String content) throws IOException {
+        Files.createDirectories(jar.getParent());
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(jar))) {
+            output.putNextEntry(new ZipEntry("META-INF/rewrite-url.xml"));
+            output.write(content.getBytes(StandardCharsets.UTF_8));
+            output.closeEntry();
+        }
+        return jar;
+    }
+
+    private static Path writeConfig(final Path root, final String content) throws IOException {
+        final Path configFile = root.resolve("META-INF/rewrite-url.xml");
+        Files.createDirectories(configFile.getParent());
+        Files.writeString(configFile, content);
+        return root;
+    }
+}
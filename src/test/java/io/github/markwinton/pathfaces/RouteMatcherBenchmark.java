@@ -0,0 +1,110 @@
+package io.github.markwinton.pathfaces;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>Compares the per-request cost of the compiled and interpreted route matchers, and the time to build the
+ * compiled matcher, for generated configurations. Not run as part of the test suite; after
+ * <code>mvn test-compile</code> run, for example:</p>
+ * <pre>
+ * java -cp target/classes:target/test-classes:slf4j-api.jar:jakarta.servlet-api.jar \
+ *     io.github.markwinton.pathfaces.RouteMatcherBenchmark 100 5000 40000
+ * </pre>
+ * <p>Each argument is a number of rules, half exact and half placeholder, defaulting to 100 and 5000. Each request
+ * kind is warmed up before being timed; interpreted matching is skipped above 5000 rules.</p>
+ */
+public final class RouteMatcherBenchmark {
+
+    private static final long WARM_UP_NANOS = 2_000_000_000L;
+    private static final long TIMED_NANOS = 1_000_000_000L;
+    private static final int REQUEST_COUNT = 64;
+
+    private RouteMatcherBenchmark() {
+    }
+
+    public static void main(final String[] args) {
+        final int[] ruleCounts = args.length > 0
+                ? List.of(args).stream().mapToInt(Integer::parseInt).toArray()
+                : new int[]{100, 5000};
+        for (final int ruleCount : ruleCounts) {
+            final RewriteConfig rewriteConfig = config(ruleCount);
+            final long buildStart = System.nanoTime();
+            final RouteMatcher compiled = CompiledRouteMatcher.of(rewriteConfig);
+            final long buildTime = System.nanoTime() - buildStart;
+            System.out.printf("%d rules, compiled matcher built in %d ms%n", ruleCount, buildTime / 1_000_000);
+            final int mappings = ruleCount / 2;
+            for (final String kind : List.of("exact", "pattern", "miss")) {
+                final RequestDetails[] requests = requests(kind, mappings);
+                System.out.printf("  %-8s compiled    %8.3f µs%n", kind, time(compiled, requests));
+                if (ruleCount <= 5000) {
+                    System.out.printf("  %-8s interpreted %8.3f µs%n", kind,
+                            time(RouteMatcher.interpreted(rewriteConfig), requests));
+                }
+            }
+        }
+    }
+
+    private static RewriteConfig config(final int ruleCount) {
+        final List<RewriteRule> rewriteRules = new ArrayList<>();
+        for (int i = 0; i < ruleCount / 2; i++) {
+            rewriteRules.add(RewriteRule.of("/Page-" + i, "/page-" + i + ".xhtml"));
+            rewriteRules.add(RewriteRule.of("/section-" + i + "/item/#{id}", "/section-" + i + ".xhtml"));
+        }
+        return new RewriteConfig(rewriteRules, List.of(IgnoredPath.of("static", "/static/")));
+    }
+
+    private static RequestDetails[] requests(final String kind, final int mappings) {
+        final Random random = new Random(42);
+        final RequestDetails[] requests = new RequestDetails[REQUEST_COUNT];
+        for (int i = 0; i < requests.length; i++) {
+            final int n = random.nextInt(mappings);
+            final String path = switch (kind) {
+                case "exact" -> "/page-" + n;
+                case "pattern" -> "/section-" + n + "/item/" + i;
+                default -> "/unmapped-" + n + "/x";
+            };
+            requests[i] = new RequestDetails(path, "");
+        }
+        return requests;
+    }
+
+    /**
+     * @return Mean microseconds per request, after warming up.
+     */
+    private static double time(final RouteMatcher routeMatcher, final RequestDetails[] requests) {
+        int hash = run(routeMatcher, requests, WARM_UP_NANOS)[1];
+        final long start = System.nanoTime();
+        final int[] result = run(routeMatcher, requests, TIMED_NANOS);
+        final long elapsed = System.nanoTime() - start;
+        hash += result[1];
+        if (hash == 42) {
+            // Keep the results live
+            System.out.print("");
+        }
+        return elapsed / 1000.0 / result[0];
+    }
+
+    /**
+     * Run requests in batches until the given time has passed.
+     * @return The number of requests run, and a value derived from their results.
+     */
+    private static int[] run(final RouteMatcher routeMatcher, final RequestDetails[] requests, final long nanos) {
+        final long end = System.nanoTime() + nanos;
+        int count = 0;
+        int hash = 0;
+        do {
+            for (final RequestDetails request : requests) {
+                hash += hash(routeMatcher.getRewrittenUrl(request));
+            }
+            count += requests.length;
+        }
+        while (System.nanoTime() < end);
+        return new int[]{count, hash};
+    }
+
+    private static int hash(final String value) {
+        return value == null ? 0 : value.length();
+    }
+}
@@ -0,0 +1,36 @@
+package io.github.markwinton.pathfaces;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SitemapWriterTest {
+
+    @Test
+    void write() throws IOException {
+        final RewriteConfig config = new RewriteConfig(
+                List.of(RewriteRule.of("/product/#{id}", "/product.xhtml")),
+                List.of()
+        );
+        final StringWriter out = new StringWriter();
+        SitemapWriter.of(BatchRewriter.of(config), "https://example.com/shop/")
+                .write(Stream.of(
+                        BookmarkableView.of("/product.xhtml", Map.of("id", List.of("a b"))),
+                        BookmarkableView.of("/product.xhtml", Map.of("id", List.of("5"), "colour", List.of("red")))
+                ), out);
+        assertThat(out.toString())
+                .isEqualTo("""
+                        <?xml version="1.0" encoding="UTF-8"?>
+                        <urlset xmlns="http://www.sitemaps.org/schemas/sitemap/0.9">
+                          <url><loc>https://example.com/shop/product/a%20b</loc></url>
+                          <url><loc>https://example.com/shop/product/5?colour=red</loc></url>
+                        </urlset>
+                        """);
+    }
+}
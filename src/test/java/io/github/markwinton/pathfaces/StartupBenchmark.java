@@ -0,0 +1,82 @@
+package io.github.markwinton.pathfaces;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * <p>Measures the time from JVM start to the first rewritten request, for comparing cold starts with and without
+ * class data sharing, a CRaC restore or a native image. Not run as part of the test suite; after
+ * <code>mvn test-compile</code> run, for example:</p>
+ * <pre>
+ * java -cp target/classes:target/test-classes:slf4j-api.jar \
+ *     io.github.markwinton.pathfaces.StartupBenchmark 10000
+ * </pre>
+ * <p>The argument is the number of <code>url-mapping</code>s to generate, defaulting to 1000. There is no servlet
+ * container here, so JVM start stands in for container start, and the request goes straight to the filter's
+ * default interpreted matcher. The compiled matcher's build and first request are then timed separately.</p>
+ */
+public final class StartupBenchmark {
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+        final long mainStart = System.currentTimeMillis();
+        final int mappingCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        final Path classPathRoot = writeConfig(mappingCount);
+
+        try (URLClassLoader classLoader = new URLClassLoader(
+                new URL[]{classPathRoot.toUri().toURL()}, StartupBenchmark.class.getClassLoader())) {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            final long configStart = System.currentTimeMillis();
+            final RewriteConfig rewriteConfig = RewrittenURLs.initialize();
+            final long initialized = System.currentTimeMillis();
+            final RequestDetails request = new RequestDetails("/section-" + (mappingCount - 1) + "/item/42", "");
+
+            // The filter's default matcher
+            final String rewrittenUrl = RouteMatcher.interpreted(rewriteConfig).getRewrittenUrl(request);
+            final long firstRequest = System.currentTimeMillis();
+
+            // The matcher the filter builds in init with compiledMatcher=true
+            final RouteMatcher compiledMatcher = CompiledRouteMatcher.of(rewriteConfig);
+            final long compiled = System.currentTimeMillis();
+            compiledMatcher.getRewrittenUrl(request);
+            final long firstCompiledRequest = System.currentTimeMillis();
+
+            System.out.printf("Mappings:                   %d%n", rewriteConfig.rewriteRules().size());
+            System.out.printf("JVM start to main:          %d ms%n", mainStart - jvmStart);
+            System.out.printf("Configuration load:         %d ms%n", initialized - configStart);
+            System.out.printf("First request rewrite:      %d ms (%s)%n", firstRequest - initialized, rewrittenUrl);
+            System.out.printf("JVM start to first rewrite: %d ms%n", firstRequest - jvmStart);
+            System.out.printf("Compiled matcher build:     %d ms%n", compiled - firstRequest);
+            System.out.printf("First compiled rewrite:     %d ms%n", firstCompiledRequest - compiled);
+        }
+    }
+
+    private static Path writeConfig(final int mappingCount) throws IOException {
+        final StringBuilder config = new StringBuilder("<rewrite-url>\n");
+        for (int i = 0; i < mappingCount; i++) {
+            config.append("""
+                        <url-mapping id="section-%1$d">
+                            <pattern value="/section-%1$d/item/#{id}"/>
+                            <view-id value="/section-%1$d.xhtml"/>
+                        </url-mapping>
+                    """.formatted(i));
+        }
+        config.append("</rewrite-url>\n");
+
+        final Path classPathRoot = Files.createTempDirectory("pathfaces-startup");
+        final Path configFile = classPathRoot.resolve("META-INF/rewrite-url.xml");
+        Files.createDirectories(configFile.getParent());
+        Files.writeString(configFile, config);
+        classPathRoot.toFile().deleteOnExit();
+        configFile.getParent().toFile().deleteOnExit();
+        configFile.toFile().deleteOnExit();
+        return classPathRoot;
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.markwinton.pathfaces;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VanityPathsTest {
+
+    @Test
+    void get() {
+        final VanityPaths vanityPaths = VanityPaths.builder()
+                .add("/summer-sale", "/promo.xhtml")
+                .add("/winter-sale", "/promo.xhtml")
+                .build();
+        assertThat(vanityPaths)
+                .returns(2, VanityPaths::size)
+                .returns("/promo.xhtml", v -> v.get("/summer-sale"))
+                .returns("/promo.xhtml", v -> v.get("/Winter-Sale"))
+                .returns(null, v -> v.get("/summer-sale/"))
+                .returns(null, v -> v.get("/autumn-sale"));
+    }
+
+    @Test
+    void getFirstAddedWins() {
+        final VanityPaths vanityPaths = VanityPaths.builder()
+                .add("/sale", "/a.xhtml")
+                .add("/SALE", "/b.xhtml")
+                .build();
+        assertThat(vanityPaths)
+                .returns(1, VanityPaths::size)
+                .returns("/a.xhtml", v -> v.get("/sale"));
+    }
+
+    @Test
+    void addAll() {
+        final VanityPaths vanityPaths = VanityPaths.builder()
+                .add("/sale", "/a.xhtml")
+                .addAll(VanityPaths.builder()
+                        .add("/SALE", "/b.xhtml")
+                        .add("/Summer-Sale", "/c.xhtml")
+                        .build())
+                .build();
+        assertThat(vanityPaths)
+                .returns(2, VanityPaths::size)
+                .returns("/a.xhtml", v -> v.get("/sale"))
+                .returns("/c.xhtml", v -> v.get("/SUMMER-SALE"));
+    }
+
+    @Test
+    void getManyPaths() {
+        final VanityPaths.Builder builder = VanityPaths.builder();
+        IntStream.range(0, 100_000)
+                .forEach(i -> builder.add("/product-" + i, "/product" + (i % 7) + ".xhtml"));
+        final VanityPaths vanityPaths = builder.build();
+        assertThat(vanityPaths.size())
+                .isEqualTo(100_000);
+        IntStream.range(0, 100_000)
+                .forEach(i -> assertThat(vanityPaths.get("/product-" + i))
+                        .isEqualTo("/product" + (i % 7) + ".xhtml"));
+        assertThat(vanityPaths.get("/product-100000"))
+                .isNull();
+    }
+
+    @Test
+    void empty() {
+        assertThat(VanityPaths.empty())
+                .returns(true, VanityPaths::isEmpty)
+                .returns(null, v -> v.get("/"));
+    }
+}